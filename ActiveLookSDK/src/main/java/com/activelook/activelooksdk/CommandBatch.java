@@ -0,0 +1,95 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk;
+
+import com.activelook.activelooksdk.types.Rotation;
+
+/**
+ * The display commands of a screen update, encoded into one buffer and enqueued at once by
+ * {@link Glasses#batch(androidx.core.util.Consumer)}.
+ * A batch must only be used by the thread running the consumer, before the consumer returns.
+ */
+public interface CommandBatch {
+
+    /**
+     * @see Glasses#clear()
+     */
+    void clear();
+    /**
+     * @see Glasses#color(byte)
+     */
+    void color(byte value);
+    /**
+     * @see Glasses#point(short, short)
+     */
+    void point(short x, short y);
+    /**
+     * @see Glasses#line(short, short, short, short)
+     */
+    void line(short x1, short y1, short x2, short y2);
+    /**
+     * @see Glasses#rect(short, short, short, short)
+     */
+    void rect(short x1, short y1, short x2, short y2);
+    /**
+     * @see Glasses#rectf(short, short, short, short)
+     */
+    void rectf(short x1, short y1, short x2, short y2);
+    /**
+     * @see Glasses#circ(short, short, byte)
+     */
+    void circ(short x, short y, byte r);
+    /**
+     * @see Glasses#circf(short, short, byte)
+     */
+    void circf(short x, short y, byte r);
+    /**
+     * @see Glasses#txt(short, short, Rotation, byte, byte, String)
+     */
+    void txt(short x, short y, Rotation r, byte f, byte c, String s);
+    /**
+     * @see Glasses#polyline(short[])
+     */
+    void polyline(short[] xys);
+    /**
+     * @see Glasses#imgDisplay(byte, short, short)
+     */
+    void imgDisplay(byte id, short x, short y);
+    /**
+     * @see Glasses#layoutDisplay(byte, String)
+     */
+    void layoutDisplay(byte id, String text);
+    /**
+     * @see Glasses#layoutDisplayExtended(byte, short, byte, String)
+     */
+    void layoutDisplayExtended(byte id, short x, byte y, String text);
+    /**
+     * @see Glasses#layoutClear(byte)
+     */
+    void layoutClear(byte id);
+    /**
+     * @see Glasses#gaugeDisplay(byte, byte)
+     */
+    void gaugeDisplay(byte id, byte value);
+    /**
+     * @see Glasses#pageDisplay(byte, String[])
+     */
+    void pageDisplay(byte id, String[] texts);
+    /**
+     * @see Glasses#pageClear(byte)
+     */
+    void pageClear(byte id);
+
+}
@@ -0,0 +1,57 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk;
+
+/**
+ * A display command encoded once, whose slots are patched in place before it is sent again.
+ * Patching and sending a template does not allocate, so that it can be sent at the refresh rate of a dashboard.
+ * A template must not be patched and sent by several threads at the same time.
+ * Setting a slot that the template does not have throws an UnsupportedOperationException.
+ */
+public interface CommandTemplate {
+
+    /**
+     * Patch the value slot of a gauge display template.
+     *
+     * @param value Value in percentage for the gauge.
+     * @return This template.
+     */
+    CommandTemplate setValue(byte value);
+
+    /**
+     * Patch the coordinates slot of an image display template.
+     *
+     * @param x The x coordinate for the image.
+     * @param y The y coordinate for the image.
+     * @return This template.
+     */
+    CommandTemplate setPosition(short x, short y);
+
+    /**
+     * Patch the text slot of a layout display template.
+     * The text is truncated or padded with spaces to the width of the template, non ASCII characters are sent
+     * as '?'.
+     *
+     * @param text The text to display for the layout.
+     * @return This template.
+     */
+    CommandTemplate setText(CharSequence text);
+
+    /**
+     * Enqueue the command as currently patched. The template can be patched again as soon as this returns.
+     */
+    void send();
+
+}
@@ -15,13 +15,17 @@ limitations under the License.
 package com.activelook.activelooksdk;
 
 import android.graphics.Point;
+import android.os.Build;
 import android.os.Parcelable;
 
+import androidx.annotation.RequiresApi;
 import androidx.core.util.Consumer;
 
+import com.activelook.activelooksdk.types.CommandPriority;
 import com.activelook.activelooksdk.types.Configuration;
 import com.activelook.activelooksdk.types.ConfigurationDescription;
 import com.activelook.activelooksdk.types.ConfigurationElementsInfo;
+import com.activelook.activelooksdk.types.ConnectionMetrics;
 import com.activelook.activelooksdk.types.DemoPattern;
 import com.activelook.activelooksdk.types.DeviceInformation;
 import com.activelook.activelooksdk.types.FlowControlStatus;
@@ -37,12 +41,16 @@ import com.activelook.activelooksdk.types.ImageInfo;
 import com.activelook.activelooksdk.types.LayoutParameters;
 import com.activelook.activelooksdk.types.LedState;
 import com.activelook.activelooksdk.types.PageInfo;
+import com.activelook.activelooksdk.types.QueueDepth;
+import com.activelook.activelooksdk.types.QueueFullPolicy;
 import com.activelook.activelooksdk.types.Rotation;
 import com.activelook.activelooksdk.types.Utils;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface Glasses extends Parcelable {
 
@@ -178,14 +186,30 @@ public interface Glasses extends Parcelable {
      * Ask glasses battery level and run the callback with results.
      *
      * @param onResult Callback on to call on returned value with an iteger between 0 and 100.
+     * @return The handle of the query.
      */
-    void battery(Consumer<Integer> onResult);
+    QueryHandle battery(Consumer<Integer> onResult);
+    /**
+     * Same as {@link #battery(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Integer> batteryAsync();
     /**
      * Ask glasses for its version and run the callback with results.
      *
      * @param onResult Callback on to call on returned value.
+     * @return The handle of the query.
+     */
+    QueryHandle vers(Consumer<GlassesVersion> onResult);
+    /**
+     * Same as {@link #vers(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
      */
-    void vers(Consumer<GlassesVersion> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<GlassesVersion> versAsync();
     /**
      * Set glasses led mode
      *
@@ -203,8 +227,16 @@ public interface Glasses extends Parcelable {
      * Ask glasses for its settings and run the callback with results.
      *
      * @param onResult Callback on to call on returned value.
+     * @return The handle of the query.
      */
-    void settings(Consumer<GlassesSettings> onResult);
+    QueryHandle settings(Consumer<GlassesSettings> onResult);
+    /**
+     * Same as {@link #settings(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<GlassesSettings> settingsAsync();
     /**
      * Set the display luminance to the corresponding level (0 to 15)
      *
@@ -306,8 +338,16 @@ public interface Glasses extends Parcelable {
      * Give the list of bitmap saved into the device.
      *
      * @param onResult Callback on to call on returned value.
+     * @return The handle of the query.
+     */
+    QueryHandle imgList(Consumer<List<ImageInfo>> onResult);
+    /**
+     * Same as {@link #imgList(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
      */
-    void imgList(Consumer<List<ImageInfo>> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<List<ImageInfo>> imgListAsync();
     /**
      * Save 4bpp bitmap of size bytes and width pixels.
      *
@@ -323,6 +363,13 @@ public interface Glasses extends Parcelable {
      * @param y  The y coordinate for the image.
      */
     void imgDisplay(byte id, short x, short y);
+    /**
+     * Pre-encode an image display command, to move an image many times per second without allocation.
+     *
+     * @param id The id of the image to display.
+     * @return The template, with a position slot.
+     */
+    CommandTemplate imgDisplayTemplate(byte id);
     /**
      * Erase all bitmaps with numbers &ge; id.
      *
@@ -351,8 +398,16 @@ public interface Glasses extends Parcelable {
      * Give the list of font saved into the device with their size.
      *
      * @param onResult Callback on to call on returned value.
+     * @return The handle of the query.
+     */
+    QueryHandle fontList(Consumer<List<FontInfo>> onResult);
+    /**
+     * Same as {@link #fontList(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
      */
-    void fontList(Consumer<List<FontInfo>> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<List<FontInfo>> fontListAsync();
     /**
      * Save font nb of size Bytes.
      *
@@ -399,6 +454,14 @@ public interface Glasses extends Parcelable {
      * @param text The text to display for this layout.
      */
     void layoutDisplay(byte id, String text);
+    /**
+     * Pre-encode a layout display command, to update a text many times per second without allocation.
+     *
+     * @param id    The id of the layout.
+     * @param width The number of characters of the text slot.
+     * @return The template, with a text slot.
+     */
+    CommandTemplate layoutDisplayTemplate(byte id, int width);
     /**
      * Clears screen of the corresponding layout area.
      *
@@ -407,8 +470,16 @@ public interface Glasses extends Parcelable {
     void layoutClear(byte id);
     /**
      * Get the list of layout ids.
+     * @return The handle of the query.
      */
-    void layoutList(Consumer<List<Integer>> onResult);
+    QueryHandle layoutList(Consumer<List<Integer>> onResult);
+    /**
+     * Same as {@link #layoutList(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<List<Integer>> layoutListAsync();
     /**
      * Redefine the position of a layout. Position is saved.
      *
@@ -430,8 +501,17 @@ public interface Glasses extends Parcelable {
      * Get a layout parameter.
      *
      * @param id   The id of the layout.
+     * @return The handle of the query.
      */
-    void layoutGet(byte id, Consumer<LayoutParameters> onResult);
+    QueryHandle layoutGet(byte id, Consumer<LayoutParameters> onResult);
+    /**
+     * Same as {@link #layoutGet(byte, Consumer)}, with the result completing a future.
+     *
+     * @param id   The id of the layout.
+     * @return The future of the result.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<LayoutParameters> layoutGetAsync(byte id);
     /**
      * Display value (in percentage) of the gauge ([1…4]).
      *
@@ -439,6 +519,13 @@ public interface Glasses extends Parcelable {
      * @param value Value in percentage for the gauge.
      */
     void gaugeDisplay(byte id, byte value);
+    /**
+     * Pre-encode a gauge display command, to update a gauge many times per second without allocation.
+     *
+     * @param id Id of the gauge to display.
+     * @return The template, with a value slot.
+     */
+    CommandTemplate gaugeDisplayTemplate(byte id);
     /**
      * Save the parameters for the gauge id.
      *
@@ -455,8 +542,12 @@ public interface Glasses extends Parcelable {
     void gaugeSave(byte id, GaugeInfo gaugeInfo);
     void gaugeDelete(byte id);
     void gaugeDeleteAll();
-    void gaugeList(Consumer<List<Integer>> onResult);
-    void gaugeGet(byte id, Consumer<GaugeInfo> onResult);
+    QueryHandle gaugeList(Consumer<List<Integer>> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<List<Integer>> gaugeListAsync();
+    QueryHandle gaugeGet(byte id, Consumer<GaugeInfo> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<GaugeInfo> gaugeGetAsync(byte id);
     /**
      * Save parameters for a given page.
      *
@@ -472,8 +563,17 @@ public interface Glasses extends Parcelable {
      *
      * @param id       The id of the page to get.
      * @param onResult Callback on to call on returned value.
+     * @return The handle of the query.
+     */
+    QueryHandle pageGet(byte id, Consumer<PageInfo> onResult);
+    /**
+     * Same as {@link #pageGet(byte, Consumer)}, with the result completing a future.
+     *
+     * @param id       The id of the page to get.
+     * @return The future of the result.
      */
-    void pageGet(byte id, Consumer<PageInfo> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<PageInfo> pageGetAsync(byte id);
     /**
      * Erase a page.
      *
@@ -483,25 +583,51 @@ public interface Glasses extends Parcelable {
     void pageDeleteAll();
     void pageDisplay(byte id, String[] texts);
     void pageClear(byte id);
-    void pageList(Consumer<List<Integer>> onResult);
+    QueryHandle pageList(Consumer<List<Integer>> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<List<Integer>> pageListAsync();
     /**
      * Get number of pixel activated on display.
      *
      * @param onResult Callback on to call on returned integer value.
+     * @return The handle of the query.
      */
-    void pixelCount(Consumer<Long> onResult);
+    QueryHandle pixelCount(Consumer<Long> onResult);
+    /**
+     * Same as {@link #pixelCount(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Long> pixelCountAsync();
     /**
      * Get total number of charging cycle.
      *
      * @param onResult Callback on to call on returned integer value.
+     * @return The handle of the query.
+     */
+    QueryHandle getChargingCounter(Consumer<Long> onResult);
+    /**
+     * Same as {@link #getChargingCounter(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
      */
-    void getChargingCounter(Consumer<Long> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Long> getChargingCounterAsync();
     /**
      * Get total number of charging minute.
      *
      * @param onResult Callback on to call on returned integer value.
+     * @return The handle of the query.
+     */
+    QueryHandle getChargingTime(Consumer<Long> onResult);
+    /**
+     * Same as {@link #getChargingTime(Consumer)}, with the result completing a future.
+     *
+     * @return The future of the result.
      */
-    void getChargingTime(Consumer<Long> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Long> getChargingTimeAsync();
     /**
      * Reset charging counter and charging time value in Param.
      */
@@ -510,14 +636,22 @@ public interface Glasses extends Parcelable {
     /* Firmware 1.8 only */
     ///////////////////////
     void cfgWrite(String name, int version, int password);
-    void cfgRead(String name, Consumer<ConfigurationElementsInfo> onResult);
+    QueryHandle cfgRead(String name, Consumer<ConfigurationElementsInfo> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<ConfigurationElementsInfo> cfgReadAsync(String name);
     void cfgSet(String name);
-    void cfgList(Consumer<List<ConfigurationDescription>> onResult);
+    QueryHandle cfgList(Consumer<List<ConfigurationDescription>> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<List<ConfigurationDescription>> cfgListAsync();
     void cfgRename(String oldName, String newName, int password);
     void cfgDelete(String name);
     void cfgDeleteLessUsed();
-    void cfgFreeSpace(Consumer<FreeSpace> onResult);
-    void cfgGetNb(Consumer<Integer> onResult);
+    QueryHandle cfgFreeSpace(Consumer<FreeSpace> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<FreeSpace> cfgFreeSpaceAsync();
+    QueryHandle cfgGetNb(Consumer<Integer> onResult);
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Integer> cfgGetNbAsync();
     void shutdown();
     ///////////////////////
     /* Firmware 1.7 only */
@@ -537,8 +671,17 @@ public interface Glasses extends Parcelable {
      *
      * @param number   The configuration id to read.
      * @param onResult Callback on to call on returned configuration.
+     * @return The handle of the query.
      */
-    void RConfigID(byte number, Consumer<Configuration> onResult);
+    QueryHandle RConfigID(byte number, Consumer<Configuration> onResult);
+    /**
+     * Same as {@link #RConfigID(byte, Consumer)}, with the result completing a future.
+     *
+     * @param number   The configuration id to read.
+     * @return The future of the result.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Configuration> RConfigIDAsync(byte number);
     /**
      * Set current config to display BMP, layout and font.
      *
@@ -649,5 +792,195 @@ public interface Glasses extends Parcelable {
      * Wait until the write queue is empty
      */
     void flush();
+    /**
+     * Get a future completed when every command enqueued before the call has been acknowledged by the glasses.
+     * The future fails with a TimeoutException after 5 seconds, or with a GlassesDisconnectedException if the
+     * glasses disconnect first.
+     *
+     * @return The future of the flush.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    default CompletableFuture<Void> flushAsync() {
+        return this.flushAsync(5000);
+    }
+    /**
+     * Get a future completed when every command enqueued before the call has been acknowledged by the glasses.
+     * The future fails with a TimeoutException after the given timeout, or with a GlassesDisconnectedException if
+     * the glasses disconnect first.
+     *
+     * @param timeoutMs The timeout in milliseconds.
+     * @return The future of the flush.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Void> flushAsync(long timeoutMs);
+    /**
+     * Get a future completed when every command enqueued with the given priority before the call has been
+     * acknowledged by the glasses, whatever the commands of the other priority still waiting to be sent.
+     * The future fails as the one of {@link #flushAsync(long)}.
+     *
+     * @param priority  The priority of the commands to wait for.
+     * @param timeoutMs The timeout in milliseconds.
+     * @return The future of the flush.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Void> flushAsync(CommandPriority priority, long timeoutMs);
+    /**
+     * Get the number of writes retried because the Bluetooth stack was busy, since the connection.
+     *
+     * @return The number of retries.
+     */
+    long getWriteRetryCount();
+    /**
+     * Log every byte exchanged with these glasses, at the debug priority.
+     * This is expensive and should only be enabled to investigate an issue.
+     *
+     * @param enabled Enable or disable the byte dumps.
+     */
+    void setByteTracing(boolean enabled);
+    /**
+     * Get a snapshot of the link health metrics of the connection: traffic, queue depth, write latency,
+     * flow control, retries and query round trips.
+     *
+     * @return The metrics since the connection.
+     */
+    ConnectionMetrics getMetrics();
+    /**
+     * Set the callback to call periodically with a snapshot of the link health metrics.
+     *
+     * @param intervalMs The period in milliseconds.
+     * @param onEvent    The callback to call.
+     */
+    void subscribeToMetrics(long intervalMs, Consumer<ConnectionMetrics> onEvent);
+    /**
+     * Unset the callback to call periodically with a snapshot of the link health metrics.
+     */
+    default void unsubscribeToMetrics() {
+        this.subscribeToMetrics(0, null);
+    }
+    /**
+     * Wait a fixed delay after each acknowledged write before sending the next one.
+     * Old firmwares may need the historical 25 ms delay.
+     *
+     * @param delayMs The delay in milliseconds.
+     */
+    void setFixedWriteDelay(int delayMs);
+    /**
+     * Adapt the delay between two writes to the write acknowledgement latency and to the glasses flow control.
+     * This is the default.
+     */
+    void setAdaptiveWriteDelay();
+    /**
+     * Run commands with the given priority.
+     * Interactive commands are sent before pending bulk commands, as soon as the frame being sent is complete.
+     * By default, images, fonts and configurations uploads are bulk and all other commands are interactive.
+     *
+     * @param priority The priority of the commands.
+     * @param commands The runnable sending the commands.
+     */
+    void withPriority(CommandPriority priority, Runnable commands);
+    /**
+     * Encode the commands of a screen update into one buffer and enqueue it at once.
+     * Commands written by other threads cannot interleave with the batch, and the batch is packed into as few
+     * packets as possible. Nothing is enqueued if the consumer throws. A batch started inside another one is
+     * part of the outer batch.
+     *
+     * @param commands The consumer adding the commands to the batch.
+     */
+    void batch(Consumer<CommandBatch> commands);
+    /**
+     * Enqueue a batch and get a future completed when it has been acknowledged by the glasses, along with every
+     * command of the same priority enqueued before it. Pending bulk transfers do not delay an interactive batch.
+     * The future fails as the one of {@link #flushAsync()}.
+     *
+     * @param commands The consumer adding the commands to the batch.
+     * @return The future of the batch.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    CompletableFuture<Void> batchAsync(Consumer<CommandBatch> commands);
+    /**
+     * Write the packets of bulk transfers (images, fonts and configurations uploads) without response.
+     * The glasses flow control still applies and the SDK falls back to writes with response when the
+     * glasses report too many overflows.
+     *
+     * @param enabled Enable or disable the write without response mode.
+     */
+    void setWriteWithoutResponse(boolean enabled);
+    /**
+     * Let newer display commands replace the pending ones.
+     * When enabled, a gaugeDisplay, layoutDisplay or layoutDisplayExtended command that has not been sent yet is
+     * replaced by a newer command of the same kind for the same gauge or layout. This keeps the displayed values
+     * up to date when the data changes faster than the connection can send it.
+     *
+     * @param enabled Enable or disable the replacement of pending display commands.
+     */
+    void setCoalesceDisplayCommands(boolean enabled);
+    /**
+     * Bound the queue of commands waiting to be sent to the glasses.
+     * Each priority has its own queue and the limits apply to each of them. A command is always accepted by an
+     * empty queue, whatever its length. The queues are unbounded by default.
+     * The BLOCK policy must not be used from the SDK callbacks. The DROP_OLDEST policy may drop chunks of
+     * images, fonts or configurations uploads and should only be used for commands that can be lost.
+     * A query rejected or dropped fails at once, its future completes exceptionally.
+     *
+     * @param maxBytes    The maximum number of pending bytes.
+     * @param maxCommands The maximum number of pending commands.
+     * @param policy      What to do with a command that does not fit.
+     */
+    void setOutboundQueueLimits(int maxBytes, int maxCommands, QueueFullPolicy policy);
+    /**
+     * Get the number of bytes and commands waiting to be sent to the glasses.
+     *
+     * @return The current depth of the queues.
+     */
+    QueueDepth getOutboundQueueDepth();
+    /**
+     * Set the callback to call when the depth of the queue of commands waiting to be sent changes.
+     * It is called on each enqueued command and on each packet sent, so it must return quickly.
+     *
+     * @param onEvent The callback to call.
+     */
+    void subscribeToOutboundQueueDepth(Consumer<QueueDepth> onEvent);
+    /**
+     * Unset the callback to call when the depth of the queue of commands waiting to be sent changes.
+     */
+    default void unsubscribeToOutboundQueueDepth() {
+        this.subscribeToOutboundQueueDepth(null);
+    }
+    /**
+     * Set the number of bytes of the query ids, from 1 to 4.
+     * With 1 byte, at most 256 queries can be pending and a late response may be routed to a newer query with
+     * the same id. With wider ids, up to 1024 queries can be pending and a response whose query has been
+     * replaced is dropped. The width should be set before sending the first query.
+     *
+     * @param bytes The width of the query ids. The default is 1.
+     */
+    void setQueryIdWidth(int bytes);
+    /**
+     * Set how long a query may wait for its response, from the time it is enqueued.
+     * The callback of a query that times out is released and never called, and the timeout is counted in the
+     * link health metrics. The timeout applies to the queries sent from now on.
+     *
+     * @param timeoutMs The timeout in milliseconds, or 0 to wait forever. The default is 10 seconds.
+     */
+    void setQueryTimeout(long timeoutMs);
+    /**
+     * Set the executor completing the futures of the queries, such as the one of {@link #batteryAsync()}.
+     * By default, a future is completed where the query callbacks run, see {@link #setCallbackExecutor(Executor)},
+     * so that its dependent stages run there unless they are given their own executor.
+     * The future of a query that times out fails with a TimeoutException, and the one of a query still pending
+     * when the glasses disconnect fails with a GlassesDisconnectedException. Cancelling a future cancels its query.
+     *
+     * @param executor The executor, or null to complete the futures where the query callbacks run.
+     */
+    void setQueryExecutor(Executor executor);
+    /**
+     * Set the executor decoding the responses and running the callbacks of the queries and of the battery level,
+     * sensor and flow control notifications, instead of the Bluetooth thread.
+     * The callbacks of the same glasses never run concurrently and keep the order of the notifications.
+     * By default, they run on a thread shared by all the glasses.
+     *
+     * @param executor The executor, or null to use the shared callback thread.
+     */
+    void setCallbackExecutor(Executor executor);
 
 }
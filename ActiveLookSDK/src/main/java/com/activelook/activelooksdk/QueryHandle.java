@@ -0,0 +1,37 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk;
+
+/**
+ * Handle of a query sent to the glasses, whose callback is called once with the response.
+ * A query that gets no response in time times out, and the queries still pending when the glasses disconnect
+ * are failed: in both cases, as when the query is cancelled, the callback is released and never called.
+ */
+public interface QueryHandle {
+
+    /**
+     * Release the callback of the query if the response has not been received yet.
+     * The command is still sent if it is waiting in the queue, and its response is ignored.
+     *
+     * @return True if the query was pending and has been cancelled.
+     */
+    boolean cancel();
+
+    /**
+     * @return True if the query has neither been answered, nor cancelled, nor failed.
+     */
+    boolean isPending();
+
+}
@@ -18,6 +18,9 @@ import android.content.Context;
 
 import androidx.core.util.Consumer;
 
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.types.LogLevel;
+
 /**
  * Main entry point for the Active Look SDK.
  * Every application must first get an instance of the SDK from here.
@@ -41,6 +44,14 @@ public interface Sdk {
     static Sdk getInstance() {
         return SdkSingleton.getInstance();
     }
+    /**
+     * Set the minimum level of the SDK logs. Logs below this level are not formatted. Defaults to WARN.
+     *
+     * @param level The minimum level to log
+     */
+    static void setLogLevel(LogLevel level) {
+        SdkLog.setLevel(level);
+    }
     /**
      * Enter scan mode for searching glasses.
      *
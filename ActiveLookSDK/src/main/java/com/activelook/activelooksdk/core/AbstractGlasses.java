@@ -14,9 +14,16 @@ limitations under the License.
 */
 package com.activelook.activelooksdk.core;
 
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
 import androidx.core.util.Consumer;
 
+import com.activelook.activelooksdk.CommandBatch;
+import com.activelook.activelooksdk.CommandTemplate;
 import com.activelook.activelooksdk.Glasses;
+import com.activelook.activelooksdk.QueryHandle;
+import com.activelook.activelooksdk.types.CommandPriority;
 import com.activelook.activelooksdk.types.Configuration;
 import com.activelook.activelooksdk.types.ConfigurationDescription;
 import com.activelook.activelooksdk.types.ConfigurationElementsInfo;
@@ -41,7 +48,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public abstract class AbstractGlasses implements Glasses {
 
@@ -151,69 +159,273 @@ public abstract class AbstractGlasses implements Glasses {
     static final byte ID_cfgFreeSpace = (byte) 0xD7;
     static final byte ID_cfgGetNb = (byte) 0xD8;
     static final byte ID_shutdown = (byte) 0xE0;
-    private final ConcurrentHashMap<QueryId, Consumer<byte[]>> callbacks;
-    private QueryId currentQID;
+    /*
+     * Key of commands that cannot supersede a pending command
+     */
+    protected static final int NO_SUPERSEDE_KEY = -1;
+    private static final int BATCH_CAPACITY = 256;
+    private final QueryRegistry queries;
+    private final ThreadLocal<CommandPriority> priorityScope;
+    private final ThreadLocal<CommandData> batchScope;
+    private volatile Executor queryExecutor;
 
     /*
     Methods for children implementation
      */
     protected AbstractGlasses() {
-        this.currentQID = new QueryId();
-        this.callbacks = new ConcurrentHashMap<>();
+        this.queries = new QueryRegistry(this::onQueryTimeout);
+        this.priorityScope = new ThreadLocal<>();
+        this.batchScope = new ThreadLocal<>();
     }
 
     protected void writeBytes(byte[] bytes) {
     }
 
-    protected final void delegateToCallback(final Command command) {
-        final QueryId qid = command.getQueryId();
-        if (qid != null) {
-            final Consumer<byte[]> callback = this.callbacks.remove(qid);
-            if (callback != null) {
-                callback.accept(command.getData());
+    /*
+    A pending command with the same supersede key may be replaced by this one
+     */
+    protected void writeBytes(byte[] bytes, CommandPriority priority, int supersedeKey) {
+        this.writeBytes(bytes);
+    }
+
+    /*
+    Children able to encode the command in place override this to skip the intermediate frame array
+     */
+    protected void writeFrame(Command command, CommandPriority priority, int supersedeKey) {
+        this.writeBytes(command.toBytes(), priority, supersedeKey);
+    }
+
+    /*
+    Called with the time elapsed between the enqueue of a query and its response
+     */
+    protected void onQueryRoundTrip(long roundTripNs) {
+    }
+
+    /*
+    Called on the query timer thread when a query gets no response in time
+     */
+    protected void onQueryTimeout() {
+    }
+
+    /*
+    Release the callbacks of the pending queries once the glasses are disconnected
+     */
+    protected final void failPendingQueries() {
+        final int failed = this.queries.failAll();
+        if (failed > 0) {
+            SdkLog.w("Query", "%d pending queries failed on disconnection", failed);
+        }
+    }
+
+    /*
+    Fail the queries of frames rejected or dropped by a full outbound queue, or of responses dropped because they
+    are too long, instead of waiting for their timeout. The bytes may hold several frames, when a batch is dropped.
+     */
+    protected final void failDroppedQueries(final byte[] frames) {
+        for (final long qid : queryIds(frames)) {
+            if (this.queries.fail(qid, new IllegalStateException(String.format("Query %d dropped", qid)))) {
+                SdkLog.w("Query", "Query %d dropped", qid);
+            }
+        }
+    }
+
+    /*
+    Release the queries registered by a batch whose consumer threw, with the cause of the failure
+     */
+    private void releaseQueries(final byte[] frames, final RuntimeException cause) {
+        int released = 0;
+        for (final long qid : queryIds(frames)) {
+            if (this.queries.fail(qid, cause)) {
+                released++;
+            }
+        }
+        if (released > 0) {
+            SdkLog.w("Query", "%d queries of a failed batch released", released);
+        }
+    }
+
+    private static List<Long> queryIds(final byte[] frames) {
+        final List<Long> ids = new ArrayList<>();
+        int offset = 0;
+        while (offset + 4 < frames.length) {
+            final boolean longFrame = (frames[offset + 2] & 0x10) == 0x10;
+            final int length = longFrame
+                    ? CommandData.UInt16.asInt(frames[offset + 3], frames[offset + 4])
+                    : CommandData.UInt8.asShort(frames[offset + 3]);
+            final int width = frames[offset + 2] & 0x0F;
+            if (length <= 0) {
+                break;
             }
+            if (width >= QueryRegistry.MIN_WIDTH && width <= QueryRegistry.MAX_WIDTH) {
+                final int start = offset + (longFrame ? 5 : 4);
+                long qid = 0;
+                for (int i = start; i < start + width && i < frames.length; i++) {
+                    qid = qid << 8 | (frames[i] & 0xFF);
+                }
+                ids.add(qid);
+            }
+            offset += length;
+        }
+        return ids;
+    }
+
+    protected final void delegateToCallback(final Command command) {
+        final long qid = command.getQueryIdValue();
+        final long sentAt = this.queries.getSentAt(qid);
+        final Consumer<byte[]> callback = this.queries.take(qid);
+        if (callback != null) {
+            this.onQueryRoundTrip(System.nanoTime() - sentAt);
+            callback.accept(command.getData());
         }
     }
 
     /*
     Private helpers
      */
-    private void registerCallback(QueryId queryId, Consumer<byte[]> callback) {
-        if (callback == null) {
-            this.callbacks.remove(queryId);
+    /*
+    Give the command the next query id, and register its callback under this id
+     */
+    private long registerQuery(final Command command, final Consumer<byte[]> callback) {
+        final int width = this.queries.getWidth();
+        final long id = this.queries.register(callback, width);
+        command.setQueryId(id, width);
+        return id;
+    }
+
+    private CommandPriority getPriority(final CommandPriority defaultPriority) {
+        final CommandPriority scope = this.priorityScope.get();
+        return scope != null ? scope : defaultPriority;
+    }
+
+    /*
+    Inside a batch, the command is encoded at the end of the batch buffer instead of being enqueued
+     */
+    private void enqueue(final Command command, final CommandPriority priority, final int supersedeKey) {
+        final CommandData batch = this.batchScope.get();
+        if (batch != null) {
+            batch.addFrame(command);
         } else {
-            this.callbacks.put(queryId, callback);
+            this.writeFrame(command, priority, supersedeKey);
         }
     }
 
-    private QueryId nextQueryId() {
-        final QueryId result = this.currentQID;
-        this.currentQID = this.currentQID.next();
-        return result;
+    private void writeCommand(final Command command) {
+        this.registerQuery(command, null);
+        this.enqueue(command, this.getPriority(CommandPriority.INTERACTIVE), NO_SUPERSEDE_KEY);
     }
 
-    private void writeCommand(final Command command) {
-        final QueryId qid = this.nextQueryId();
-        command.setQueryId(qid);
-        this.registerCallback(qid, null);
-        this.writeBytes(command.toBytes());
+    private void writeBulkCommand(final Command command) {
+        this.registerQuery(command, null);
+        this.enqueue(command, this.getPriority(CommandPriority.BULK), NO_SUPERSEDE_KEY);
     }
 
-    private void writeCommand(final Command command, final Consumer<byte[]> callback) {
-        QueryId qid = this.nextQueryId();
-        command.setQueryId(qid);
-        this.registerCallback(qid, callback);
-        this.writeBytes(command.toBytes());
+    /*
+    Each chunk command refers to its slice of the bytes, which are encoded without intermediate copy
+     */
+    private void writeBulkChunks(final byte commandId, final byte[] bytes, final int chunkSize) {
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            this.writeBulkCommand(new Command(commandId, bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+        }
+    }
+
+    /*
+    Display command of a layout or a gauge: supersedes the pending one for the same id
+     */
+    private void writeDisplayCommand(final Command command, final byte commandId, final byte id) {
+        this.registerQuery(command, null);
+        this.enqueue(command, this.getPriority(CommandPriority.INTERACTIVE), getDisplayKey(commandId, id));
+    }
+
+    static int getDisplayKey(final byte commandId, final byte id) {
+        return (commandId & 0xFF) << 8 | (id & 0xFF);
+    }
+
+    /*
+    Template frames have no query id, they are copied as is into the queue
+     */
+    void writeTemplate(final byte[] frame, final int supersedeKey) {
+        final CommandData batch = this.batchScope.get();
+        if (batch != null) {
+            batch.add(frame);
+        } else {
+            this.writeBytes(frame, this.getPriority(CommandPriority.INTERACTIVE), supersedeKey);
+        }
+    }
+
+    private QueryHandle writeCommand(final Command command, final Consumer<byte[]> callback) {
+        final PendingQuery query = new PendingQuery(this.queries, callback);
+        query.setId(this.registerQuery(command, query));
+        this.enqueue(command, this.getPriority(CommandPriority.INTERACTIVE), NO_SUPERSEDE_KEY);
+        return query;
     }
 
     /*
     Public defaults
      */
+    @Override
+    public void withPriority(final CommandPriority priority, final Runnable commands) {
+        final CommandPriority previous = this.priorityScope.get();
+        this.priorityScope.set(priority);
+        try {
+            commands.run();
+        } finally {
+            if (previous == null) {
+                this.priorityScope.remove();
+            } else {
+                this.priorityScope.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public void setQueryIdWidth(final int bytes) {
+        this.queries.setWidth(bytes);
+    }
+
+    @Override
+    public void setQueryTimeout(final long timeoutMs) {
+        this.queries.setTimeout(timeoutMs);
+    }
+
+    @Override
+    public void setQueryExecutor(final Executor executor) {
+        this.queryExecutor = executor;
+    }
+
+    @Override
+    public void batch(final Consumer<CommandBatch> commands) {
+        if (this.batchScope.get() != null) {
+            commands.accept(new CommandBatchImpl(this));
+            return;
+        }
+        final CommandData batch = CommandData.withCapacity(BATCH_CAPACITY);
+        this.batchScope.set(batch);
+        try {
+            commands.accept(new CommandBatchImpl(this));
+        } catch (RuntimeException e) {
+            this.releaseQueries(batch.getBytes(), e);
+            throw e;
+        } finally {
+            this.batchScope.remove();
+        }
+        if (batch.size() > 0) {
+            this.writeBytes(batch.getBytes(), this.getPriority(CommandPriority.INTERACTIVE), NO_SUPERSEDE_KEY);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Void> batchAsync(final Consumer<CommandBatch> commands) {
+        final CommandPriority priority = this.getPriority(CommandPriority.INTERACTIVE);
+        this.batch(commands);
+        return this.flushAsync(priority, 5000);
+    }
+
     @Override
     public void loadConfiguration(BufferedReader cfg) throws IOException {
         String line;
         while ((line = cfg.readLine()) != null) {
-            this.writeBytes(Utils.hexStringToBytes(line));
+            this.writeBytes(Utils.hexStringToBytes(line), this.getPriority(CommandPriority.BULK), NO_SUPERSEDE_KEY);
         }
     }
 
@@ -252,21 +464,35 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void battery(final Consumer<Integer> onResult) {
-        this.writeCommand(
+    public QueryHandle battery(final Consumer<Integer> onResult) {
+        return this.writeCommand(
                 new Command(ID_battery),
                 bytes -> onResult.accept(CommandData.toBatteryLevel(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void vers(final Consumer<GlassesVersion> onResult) {
-        this.writeCommand(
+    public CompletableFuture<Integer> batteryAsync() {
+        final QueryFuture<Integer> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.battery(future));
+    }
+
+    @Override
+    public QueryHandle vers(final Consumer<GlassesVersion> onResult) {
+        return this.writeCommand(
                 new Command(ID_vers),
                 bytes -> onResult.accept(CommandData.toGlassesVersion(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<GlassesVersion> versAsync() {
+        final QueryFuture<GlassesVersion> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.vers(future));
+    }
+
     @Override
     public void led(final LedState state) {
         final CommandData data = CommandData.fromLedState(state);
@@ -280,13 +506,20 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void settings(final Consumer<GlassesSettings> onResult) {
-        this.writeCommand(
+    public QueryHandle settings(final Consumer<GlassesSettings> onResult) {
+        return this.writeCommand(
                 new Command(ID_settings),
                 bytes -> onResult.accept(CommandData.toGlassesSettings(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<GlassesSettings> settingsAsync() {
+        final QueryFuture<GlassesSettings> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.settings(future));
+    }
+
     @Override
     public void luma(final byte value) {
         final CommandData data = CommandData.fromLuma(value);
@@ -370,23 +603,28 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void imgList(final Consumer<List<ImageInfo>> onResult) {
-        this.writeCommand(
+    public QueryHandle imgList(final Consumer<List<ImageInfo>> onResult) {
+        return this.writeCommand(
                 new Command(ID_imgList),
                 bytes -> onResult.accept(CommandData.toImageInfoList(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<List<ImageInfo>> imgListAsync() {
+        final QueryFuture<List<ImageInfo>> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.imgList(future));
+    }
+
     // TODO @Override
     public void imgSave(final byte id, final int width, final byte[] bytes) {
         final CommandData data = new CommandData()
                 .addUInt8(id)
                 .addUInt32(bytes.length)
                 .addUInt16(width);
-        this.writeCommand(new Command(ID_imgSave, data));
-        for (final CommandData chunkData : new CommandData(bytes).split(240)) {
-            this.writeCommand(new Command(ID_imgSave, chunkData));
-        }
+        this.writeBulkCommand(new Command(ID_imgSave, data));
+        this.writeBulkChunks(ID_imgSave, bytes, 240);
     }
 
     @Override
@@ -400,6 +638,11 @@ public abstract class AbstractGlasses implements Glasses {
         this.writeCommand(new Command(ID_imgDisplay, data));
     }
 
+    @Override
+    public CommandTemplate imgDisplayTemplate(final byte id) {
+        return CommandTemplateImpl.imgDisplay(this, id);
+    }
+
     @Override
     public void imgDelete(final byte id) {
         final CommandData data = new CommandData().addUInt8(id);
@@ -415,9 +658,7 @@ public abstract class AbstractGlasses implements Glasses {
         // Each chunk must contain only complete lines
         final int lineBytes = (width - 1) / 8 + 1;
         final int chunkSize = (240 / lineBytes) * lineBytes;
-        for (final CommandData chunkData : new CommandData(bytes).split(chunkSize)) {
-            this.writeCommand(new Command(ID_imgStream, chunkData));
-        }
+        this.writeBulkChunks(ID_imgStream, bytes, chunkSize);
     }
 
     // TODO @Override
@@ -426,7 +667,7 @@ public abstract class AbstractGlasses implements Glasses {
                 .addUInt32(bytes.length)
                 .addUInt16(width)
                 .addInt16(x, y);
-        this.writeCommand(new Command(ID_imgStream, header));
+        this.writeBulkCommand(new Command(ID_imgStream, header));
         send1bppData(ID_imgStream, width, bytes);
     }
 
@@ -441,7 +682,7 @@ public abstract class AbstractGlasses implements Glasses {
                 .addUInt8(id)
                 .addUInt32(bytes.length)
                 .addUInt16(width);
-        this.writeCommand(new Command(ID_imgSave1bpp, data));
+        this.writeBulkCommand(new Command(ID_imgSave1bpp, data));
         send1bppData(ID_imgSave1bpp, width, bytes);
     }
 
@@ -451,22 +692,27 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void fontList(final Consumer<List<FontInfo>> onResult) {
-        this.writeCommand(
+    public QueryHandle fontList(final Consumer<List<FontInfo>> onResult) {
+        return this.writeCommand(
                 new Command(ID_fontList),
                 bytes -> onResult.accept(CommandData.toFontInfoList(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<List<FontInfo>> fontListAsync() {
+        final QueryFuture<List<FontInfo>> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.fontList(future));
+    }
+
     // TODO @Override
     public void fontSave(final byte id, final byte[] bytes) {
         final CommandData data = new CommandData()
                 .addUInt8(id)
                 .addUInt16(bytes.length);
-        this.writeCommand(new Command(ID_fontSave, data));
-        for (final CommandData chunkData : new CommandData(bytes).split(240)) {
-            this.writeCommand(new Command(ID_fontSave, chunkData));
-        }
+        this.writeBulkCommand(new Command(ID_fontSave, data));
+        this.writeBulkChunks(ID_fontSave, bytes, 240);
     }
 
     @Override
@@ -511,7 +757,12 @@ public abstract class AbstractGlasses implements Glasses {
     @Override
     public void layoutDisplay(final byte id, final String text) {
         final CommandData data = new CommandData().addUInt8(id).addNulTerminatedStrings(text);
-        this.writeCommand(new Command(ID_layoutDisplay, data));
+        this.writeDisplayCommand(new Command(ID_layoutDisplay, data), ID_layoutDisplay, id);
+    }
+
+    @Override
+    public CommandTemplate layoutDisplayTemplate(final byte id, final int width) {
+        return CommandTemplateImpl.layoutDisplay(this, id, width);
     }
 
     @Override
@@ -521,8 +772,8 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void layoutList(final Consumer<List<Integer>> onResult) {
-        this.writeCommand(
+    public QueryHandle layoutList(final Consumer<List<Integer>> onResult) {
+        return this.writeCommand(
             new Command(ID_layoutList),
             bytes -> {
                 final List<Integer> r = new ArrayList<>();
@@ -534,6 +785,13 @@ public abstract class AbstractGlasses implements Glasses {
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<List<Integer>> layoutListAsync() {
+        final QueryFuture<List<Integer>> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.layoutList(future));
+    }
+
     @Override
     public void layoutPosition(final byte id, final short x, final byte y) {
         final CommandData data = new CommandData().addUInt8(id).addUInt16(x).addUInt8(y);
@@ -543,22 +801,34 @@ public abstract class AbstractGlasses implements Glasses {
     @Override
     public void layoutDisplayExtended(final byte id, final short x, final byte y, final String text) {
         final CommandData data = new CommandData().addUInt8(id).addUInt16(x).addUInt8(y).addNulTerminatedStrings(text);
-        this.writeCommand(new Command(ID_layoutDisplayExtended, data));
+        this.writeDisplayCommand(new Command(ID_layoutDisplayExtended, data), ID_layoutDisplayExtended, id);
     }
 
     @Override
-    public void layoutGet(final byte id, final Consumer<LayoutParameters> onResult) {
+    public QueryHandle layoutGet(final byte id, final Consumer<LayoutParameters> onResult) {
         final CommandData data = new CommandData().addUInt8(id);
-        this.writeCommand(
+        return this.writeCommand(
                 new Command(ID_layoutGet, data),
                 bytes -> onResult.accept(CommandData.toLayoutParameters(id, bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<LayoutParameters> layoutGetAsync(final byte id) {
+        final QueryFuture<LayoutParameters> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.layoutGet(id, future));
+    }
+
     @Override
     public void gaugeDisplay(final byte id, final byte value) {
         final CommandData data = new CommandData().addUInt8(id).addUInt8(value);
-        this.writeCommand(new Command(ID_gaugeDisplay, data));
+        this.writeDisplayCommand(new Command(ID_gaugeDisplay, data), ID_gaugeDisplay, id);
+    }
+
+    @Override
+    public CommandTemplate gaugeDisplayTemplate(final byte id) {
+        return CommandTemplateImpl.gaugeDisplay(this, id);
     }
 
     @Override
@@ -593,8 +863,8 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void gaugeList(final Consumer<List<Integer>> onResult) {
-        this.writeCommand(
+    public QueryHandle gaugeList(final Consumer<List<Integer>> onResult) {
+        return this.writeCommand(
                 new Command(ID_gaugeList),
                 bytes -> {
                     final List<Integer> r = new ArrayList<>();
@@ -606,15 +876,29 @@ public abstract class AbstractGlasses implements Glasses {
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<List<Integer>> gaugeListAsync() {
+        final QueryFuture<List<Integer>> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.gaugeList(future));
+    }
+
     @Override
-    public void gaugeGet(final byte id, final Consumer<GaugeInfo> onResult) {
+    public QueryHandle gaugeGet(final byte id, final Consumer<GaugeInfo> onResult) {
         final CommandData data = new CommandData().addUInt8(id);
-        this.writeCommand(
+        return this.writeCommand(
                 new Command(ID_gaugeGet, data),
                 bytes -> onResult.accept(CommandData.toGaugeInfo(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<GaugeInfo> gaugeGetAsync(final byte id) {
+        final QueryFuture<GaugeInfo> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.gaugeGet(id, future));
+    }
+
     // TODO !!!! HERE
     @Override
     public void pageSave(byte id, byte[] layoutIds, short[] xs, byte [] ys) {
@@ -627,8 +911,15 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void pageGet(byte id, Consumer<PageInfo> onResult) {
-        this.writeCommand(new Command(ID_pageList), bytes -> onResult.accept(new PageInfo(bytes)));
+    public QueryHandle pageGet(byte id, Consumer<PageInfo> onResult) {
+        return this.writeCommand(new Command(ID_pageList), bytes -> onResult.accept(new PageInfo(bytes)));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<PageInfo> pageGetAsync(final byte id) {
+        final QueryFuture<PageInfo> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.pageGet(id, future));
     }
 
     @Override
@@ -655,8 +946,8 @@ public abstract class AbstractGlasses implements Glasses {
         this.writeCommand(new Command(ID_pageClear).addData(id));
     }
     @Override
-    public void pageList(Consumer<List<Integer>> onResult) {
-        this.writeCommand(
+    public QueryHandle pageList(Consumer<List<Integer>> onResult) {
+        return this.writeCommand(
                 new Command(ID_pageList),
                 bytes -> {
                     final List<Integer> r = new ArrayList<>();
@@ -668,30 +959,58 @@ public abstract class AbstractGlasses implements Glasses {
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<List<Integer>> pageListAsync() {
+        final QueryFuture<List<Integer>> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.pageList(future));
+    }
+
     @Override
-    public void pixelCount(final Consumer<Long> onResult) {
-        this.writeCommand(
+    public QueryHandle pixelCount(final Consumer<Long> onResult) {
+        return this.writeCommand(
                 new Command(ID_pixelCount),
                 bytes -> onResult.accept(CommandData.UInt32.asLong(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void getChargingCounter(final Consumer<Long> onResult) {
-        this.writeCommand(
+    public CompletableFuture<Long> pixelCountAsync() {
+        final QueryFuture<Long> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.pixelCount(future));
+    }
+
+    @Override
+    public QueryHandle getChargingCounter(final Consumer<Long> onResult) {
+        return this.writeCommand(
                 new Command(ID_getChargingCounter),
                 bytes -> onResult.accept(CommandData.UInt32.asLong(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Long> getChargingCounterAsync() {
+        final QueryFuture<Long> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.getChargingCounter(future));
+    }
+
     @Override
-    public void getChargingTime(final Consumer<Long> onResult) {
-        this.writeCommand(
+    public QueryHandle getChargingTime(final Consumer<Long> onResult) {
+        return this.writeCommand(
                 new Command(ID_getChargingTime),
                 bytes -> onResult.accept(CommandData.UInt32.asLong(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Long> getChargingTimeAsync() {
+        final QueryFuture<Long> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.getChargingTime(future));
+    }
+
     @Override
     public void resetChargingParam() {
         this.writeCommand(new Command(ID_resetChargingParam));
@@ -704,14 +1023,21 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void cfgRead(final String name, final Consumer<ConfigurationElementsInfo> onResult) {
+    public QueryHandle cfgRead(final String name, final Consumer<ConfigurationElementsInfo> onResult) {
         final CommandData data = new CommandData().addNulTerminatedStrings(name);
-        this.writeCommand(
+        return this.writeCommand(
                 new Command(ID_cfgRead, data),
                 bytes -> onResult.accept(CommandData.toConfigurationElementsInfo(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<ConfigurationElementsInfo> cfgReadAsync(final String name) {
+        final QueryFuture<ConfigurationElementsInfo> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.cfgRead(name, future));
+    }
+
     @Override
     public void cfgSet(final String name) {
         final CommandData data = new CommandData().addNulTerminatedStrings(name);
@@ -719,13 +1045,20 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void cfgList(final Consumer<List<ConfigurationDescription>> onResult) {
-        this.writeCommand(
+    public QueryHandle cfgList(final Consumer<List<ConfigurationDescription>> onResult) {
+        return this.writeCommand(
                 new Command(ID_cfgList),
                 bytes -> onResult.accept(CommandData.toConfigurationDescriptionList(bytes))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<List<ConfigurationDescription>> cfgListAsync() {
+        final QueryFuture<List<ConfigurationDescription>> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.cfgList(future));
+    }
+
     @Override
     public void cfgRename(final String oldName, final String newName, final int password) {
         final CommandData data = new CommandData().addNulTerminatedStrings(oldName, newName).addUInt32(password);
@@ -744,20 +1077,34 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void cfgFreeSpace(final Consumer<FreeSpace> onResult) {
-        this.writeCommand(
+    public QueryHandle cfgFreeSpace(final Consumer<FreeSpace> onResult) {
+        return this.writeCommand(
                 new Command(ID_cfgFreeSpace),
                 bytes -> onResult.accept(CommandData.toFreeSpace(bytes))
         );
     }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void cfgGetNb(final Consumer<Integer> onResult) {
-        this.writeCommand(
+    public CompletableFuture<FreeSpace> cfgFreeSpaceAsync() {
+        final QueryFuture<FreeSpace> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.cfgFreeSpace(future));
+    }
+    @Override
+    public QueryHandle cfgGetNb(final Consumer<Integer> onResult) {
+        return this.writeCommand(
                 new Command(ID_getChargingTime),
                 bytes -> onResult.accept((int) CommandData.UInt8.asShort(bytes[0]))
         );
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Integer> cfgGetNbAsync() {
+        final QueryFuture<Integer> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.cfgGetNb(future));
+    }
+
     @Override
     public void shutdown() {
         this.writeCommand(new Command(ID_shutdown).addData(new byte [] { (byte) 0x6F, (byte) 0x7F, (byte) 0xC4, (byte) 0xEE}));
@@ -777,8 +1124,15 @@ public abstract class AbstractGlasses implements Glasses {
     }
 
     @Override
-    public void RConfigID(byte number, Consumer<Configuration> onResult) {
-        this.writeCommand(new Command(ID_RConfigID).addData(number), bytes -> onResult.accept(new Configuration(bytes)));
+    public QueryHandle RConfigID(byte number, Consumer<Configuration> onResult) {
+        return this.writeCommand(new Command(ID_RConfigID).addData(number), bytes -> onResult.accept(new Configuration(bytes)));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Configuration> RConfigIDAsync(final byte number) {
+        final QueryFuture<Configuration> future = new QueryFuture<>(this.queryExecutor);
+        return future.watch(this.RConfigID(number, future));
     }
 
     @Override
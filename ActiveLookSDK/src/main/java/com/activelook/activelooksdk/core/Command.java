@@ -14,15 +14,27 @@ limitations under the License.
 */
 package com.activelook.activelooksdk.core;
 
-import android.util.Log;
+import com.activelook.activelooksdk.core.transport.FrameEncoder;
+import com.activelook.activelooksdk.types.LogLevel;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-public class Command {
+public class Command implements FrameEncoder {
 
     private final byte commandId;
     private byte[] queryId;
+    /*
+    A query id allocated by the glasses is kept as a value of queryIdWidth bytes, written without array
+     */
+    private long queryIdValue;
+    private int queryIdWidth;
+    /*
+    The data is the slice [dataOffset, dataOffset + dataLength) of this array, which may be shared with the caller
+     */
     private byte[] data;
+    private int dataOffset;
+    private int dataLength;
 
     public Command() {
         super();
@@ -35,8 +47,17 @@ public class Command {
     }
 
     public Command(final byte commandId, final CommandData data) {
+        this(commandId, data.array(), 0, data.size());
+    }
+
+    /*
+    The data is not copied: the slice must not be modified until the command is written
+     */
+    Command(final byte commandId, final byte[] data, final int offset, final int length) {
         this(commandId);
-        this.data = data.getBytes();
+        this.data = data;
+        this.dataOffset = offset;
+        this.dataLength = length;
     }
 
 
@@ -67,6 +88,7 @@ public class Command {
         if (m > 0) {
             this.data = new byte[m];
             System.arraycopy(payload, offset + n, this.data, 0, m);
+            this.dataLength = m;
         } else {
             this.data = new byte[0];
         }
@@ -74,7 +96,6 @@ public class Command {
     }
 
     public static final boolean isValidBuffer(byte[] payload) {
-        Log.d("Validating", Command.bytesToStr(payload));
         int fullLength = 5;
         assert payload[0] == (byte) 0xFF;
         if ((payload[2] & 0x10) == 0x10) {
@@ -82,7 +103,9 @@ public class Command {
         } else {
             fullLength = CommandData.UInt8.asShort(payload[3]);
         }
-        Log.d("Validating", String.format("payload.length %d == fullLength %d", payload.length, fullLength));
+        if (SdkLog.isLoggable(LogLevel.VERBOSE)) {
+            SdkLog.v("Validating", "payload.length %d == fullLength %d", payload.length, fullLength);
+        }
         if (payload.length == fullLength) {
             assert payload[fullLength - 1] == (byte) 0xAA;
             return true;
@@ -104,99 +127,6 @@ public class Command {
         return String.format("%s ]", result.toString());
     }
 
-    /**
-     * A command includes a header and a footer.
-     * The header is made of START + Command ID + Command Format + length (+ Query ID).
-     * The command layout is as follows:
-     * | 0xFF   | 0x..       | 0x0n           | 0x..        | n * 0x..  | m * 0x..       | 0xAA   |
-     * |--------|------------|----------------|-------------|-----------|----------------|--------|
-     * | HEADER | Command ID | Command Format | data length | Query ID  | Data           | FOOTER |
-     * | 1B     | 1B         | 1B             | 1B          | nB        | mB             | 1B     |
-     * Or
-     * | 0xFF   | 0x..       | 0x1n           | 0x.. 0x..   | n * 0x..  | m * 0x..       | 0xAA   |
-     * |--------|------------|----------------|-------------|-----------|----------------|--------|
-     * | HEADER | Command ID | Command Format | data length | Query ID  | Data           | FOOTER |
-     * | 1B     | 1B         | 1B             | 2B          | nB        | mB             | 1B     |
-     *
-     * @param commandId: Command identifier
-     * @param queryId:   Can be null: Defines by the user, allows to identify a command (query) and the associated
-     *                   response. When a queryId is sent with the command, the response includes this queryId, allowing
-     *                   the user to match the response with the original command in an asynchronous system.
-     * @param data:      Can be null. Parameters of the command
-     * @return the byte buffer to write
-     */
-    private static final byte[] getBytes(byte commandId, byte[] queryId, byte[] data) {
-        int n = queryId.length;
-        int m = data.length;
-        assert n <= 15 : String.format("QueryId length too big: %d > 15", n);
-        assert m <= 512 : String.format("Data length too big: %d > 512", m);
-        int fullLength = 5 + n + m;
-        int copyOffset = 4;
-        if (fullLength > 0xFF) {
-            fullLength += 1;
-            copyOffset = 5;
-        }
-        byte[] payload = new byte[fullLength];
-        payload[0] = (byte) 0xFF;
-        payload[1] = commandId;
-        if (fullLength > 0xFF) {
-            payload[2] = (byte) (0x10 | n);
-            payload[3] = (byte) ((fullLength & 0xFF00) >> 8);
-            payload[4] = (byte) (fullLength & 0x00FF);
-        } else {
-            payload[2] = (byte) (0x00 | n);
-            payload[3] = (byte) fullLength;
-        }
-        System.arraycopy(queryId, 0, payload, copyOffset, n);
-        copyOffset += n;
-        System.arraycopy(data, 0, payload, copyOffset, m);
-        copyOffset += m;
-        payload[copyOffset] = (byte) 0xAA;
-        return payload;
-    }
-
-    private static final byte[] getBytesWithData(byte commandId, byte[] data) {
-        int m = data.length;
-        assert m <= 512 : String.format("Data length too big: %d > 512", m);
-        int fullLength = 5 + m;
-        int copyOffset = 4;
-        if (fullLength > 0xFF) {
-            fullLength += 1;
-            copyOffset = 5;
-        }
-        byte[] payload = new byte[fullLength];
-        payload[0] = (byte) 0xFF;
-        payload[1] = commandId;
-        if (fullLength > 0xFF) {
-            payload[2] = (byte) 0x10;
-            payload[3] = (byte) ((fullLength & 0xFF00) >> 8);
-            payload[4] = (byte) (fullLength & 0x00FF);
-        } else {
-            payload[2] = (byte) 0x00;
-            payload[3] = (byte) fullLength;
-        }
-        System.arraycopy(data, 0, payload, copyOffset, m);
-        copyOffset += m;
-        payload[copyOffset] = (byte) 0xAA;
-        return payload;
-    }
-
-    private static final byte[] getBytesWithQueryId(byte commandId, byte[] queryId) {
-        int n = queryId.length;
-        assert n <= 15 : String.format("QueryId length too big: %d > 15", n);
-        int fullLength = 5 + n;
-        int copyOffset = 4;
-        byte[] payload = new byte[fullLength];
-        payload[0] = (byte) 0xFF;
-        payload[1] = commandId;
-        payload[2] = (byte) (0x00 | n);
-        payload[3] = (byte) fullLength;
-        System.arraycopy(queryId, 0, payload, copyOffset, n);
-        copyOffset += n;
-        payload[copyOffset] = (byte) 0xAA;
-        return payload;
-    }
-
     private static final byte[] combine(byte[]... parameters) {
         int fullLength = 0;
         for (byte[] parameter : parameters) {
@@ -211,16 +141,12 @@ public class Command {
         return result;
     }
 
-    private static final byte[] getBytes(byte commandId) {
-        return new byte[]{(byte) 0xFF, commandId, (byte) 0x00, (byte) 0x05, (byte) 0xAA};
-    }
-
     @Override
     public String toString() {
         return "Command{" +
                 "commandId=" + this.commandId +
-                ", queryId=" + bytesToStr(this.queryId) +
-                ", data=" + bytesToStr(this.data) +
+                ", queryId=" + bytesToStr(this.getQueryIdBytes()) +
+                ", data=" + bytesToStr(this.getData()) +
                 '}';
     }
 
@@ -229,15 +155,55 @@ public class Command {
      */
 
     public QueryId getQueryId() {
-        if (this.queryId != null) {
-            return new QueryId(this.queryId[0]);
+        final byte[] qid = this.getQueryIdBytes();
+        if (qid != null) {
+            return new QueryId(qid[0]);
         } else {
             return null;
         }
     }
 
+    /*
+    The query id as an unsigned big endian value, without allocation
+     */
+    long getQueryIdValue() {
+        if (this.queryIdWidth > 0) {
+            return this.queryIdValue;
+        }
+        if (this.queryId == null || this.queryId.length == 0 || this.queryId.length > QueryRegistry.MAX_WIDTH) {
+            return QueryRegistry.NO_QUERY_ID;
+        }
+        long value = 0;
+        for (final byte b : this.queryId) {
+            value = value << 8 | (b & 0xFF);
+        }
+        return value;
+    }
+
     public void setQueryId(byte[] queryId) {
         this.queryId = queryId;
+        this.queryIdWidth = 0;
+    }
+
+    void setQueryId(final long value, final int width) {
+        this.queryId = null;
+        this.queryIdValue = value;
+        this.queryIdWidth = width;
+    }
+
+    private byte[] getQueryIdBytes() {
+        if (this.queryIdWidth == 0) {
+            return this.queryId;
+        }
+        final byte[] qid = new byte[this.queryIdWidth];
+        for (int i = 0; i < qid.length; i++) {
+            qid[i] = (byte) (this.queryIdValue >> (8 * (qid.length - 1 - i)));
+        }
+        return qid;
+    }
+
+    private int getQueryIdLength() {
+        return this.queryId == null ? this.queryIdWidth : this.queryId.length;
     }
 
     public void setQueryId(QueryId qid) {
@@ -245,34 +211,94 @@ public class Command {
     }
 
     public byte[] getData() {
-        return this.data;
+        if (this.data == null || this.dataOffset == 0 && this.dataLength == this.data.length) {
+            return this.data;
+        }
+        return Arrays.copyOfRange(this.data, this.dataOffset, this.dataOffset + this.dataLength);
     }
 
     public void setData(byte[] data) {
         this.data = data;
+        this.dataOffset = 0;
+        this.dataLength = data == null ? 0 : data.length;
     }
 
     public byte[] toBytes() {
-        if (this.data == null) {
-            if (this.queryId == null) {
-                return getBytes(this.commandId);
-            } else {
-                return getBytesWithQueryId(this.commandId, this.queryId);
-            }
+        final byte[] payload = new byte[this.getEncodedLength()];
+        this.encode(payload, 0, -1);
+        return payload;
+    }
+
+    @Override
+    public int getEncodedLength() {
+        final int fullLength = 5 + this.getQueryIdLength() + this.dataLength;
+        return fullLength > 0xFF ? fullLength + 1 : fullLength;
+    }
+
+    /**
+     * A command includes a header and a footer.
+     * The header is made of START + Command ID + Command Format + length (+ Query ID).
+     * The command layout is as follows:
+     * | 0xFF   | 0x..       | 0x0n           | 0x..        | n * 0x..  | m * 0x..       | 0xAA   |
+     * |--------|------------|----------------|-------------|-----------|----------------|--------|
+     * | HEADER | Command ID | Command Format | data length | Query ID  | Data           | FOOTER |
+     * | 1B     | 1B         | 1B             | 1B          | nB        | mB             | 1B     |
+     * Or
+     * | 0xFF   | 0x..       | 0x1n           | 0x.. 0x..   | n * 0x..  | m * 0x..       | 0xAA   |
+     * |--------|------------|----------------|-------------|-----------|----------------|--------|
+     * | HEADER | Command ID | Command Format | data length | Query ID  | Data           | FOOTER |
+     * | 1B     | 1B         | 1B             | 2B          | nB        | mB             | 1B     |
+     * The length is known before the first byte is written, so every byte is written once, in place.
+     *
+     * @param buffer   The destination buffer.
+     * @param position The position of the header.
+     * @param mask     The mask of the ring buffer, or -1 for a plain array.
+     */
+    @Override
+    public void encode(final byte[] buffer, final int position, final int mask) {
+        final int n = this.getQueryIdLength();
+        assert n <= 15 : String.format("QueryId length too big: %d > 15", n);
+        assert this.dataLength <= 512 : String.format("Data length too big: %d > 512", this.dataLength);
+        final int fullLength = this.getEncodedLength();
+        int i = position;
+        buffer[i++ & mask] = (byte) 0xFF;
+        buffer[i++ & mask] = this.commandId;
+        if (fullLength > 0xFF) {
+            buffer[i++ & mask] = (byte) (0x10 | n);
+            buffer[i++ & mask] = (byte) ((fullLength & 0xFF00) >> 8);
+            buffer[i++ & mask] = (byte) (fullLength & 0x00FF);
         } else {
-            if (this.queryId == null) {
-                return getBytesWithData(this.commandId, this.data);
-            } else {
-                return getBytes(this.commandId, this.queryId, this.data);
+            buffer[i++ & mask] = (byte) n;
+            buffer[i++ & mask] = (byte) fullLength;
+        }
+        if (this.queryId != null) {
+            i = copy(this.queryId, 0, n, buffer, i, mask);
+        } else {
+            for (int shift = 8 * (n - 1); shift >= 0; shift -= 8) {
+                buffer[i++ & mask] = (byte) (this.queryIdValue >> shift);
             }
         }
+        i = copy(this.data, this.dataOffset, this.dataLength, buffer, i, mask);
+        buffer[i & mask] = (byte) 0xAA;
+    }
+
+    private static int copy(final byte[] src, final int offset, final int length, final byte[] buffer,
+            final int position, final int mask) {
+        if (length == 0) {
+            return position;
+        }
+        final int start = position & mask;
+        final int first = Math.min(length, buffer.length - start);
+        System.arraycopy(src, offset, buffer, start, first);
+        System.arraycopy(src, offset + first, buffer, 0, length - first);
+        return position + length;
     }
 
     public Command addData(byte[] bytes) {
         if (this.data == null) {
-            this.data = bytes;
+            this.setData(bytes);
         } else {
-            this.data = Command.combine(this.data, bytes);
+            this.setData(Command.combine(this.getData(), bytes));
         }
         return this;
     }
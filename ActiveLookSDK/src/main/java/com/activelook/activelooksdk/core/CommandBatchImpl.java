@@ -0,0 +1,118 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import com.activelook.activelooksdk.CommandBatch;
+import com.activelook.activelooksdk.types.Rotation;
+
+/**
+ * A batch forwarding the commands to the glasses while their batch scope is set, so that the commands are
+ * encoded into the batch buffer instead of being enqueued.
+ */
+final class CommandBatchImpl implements CommandBatch {
+
+    private final AbstractGlasses glasses;
+
+    CommandBatchImpl(final AbstractGlasses glasses) {
+        super();
+        this.glasses = glasses;
+    }
+
+    @Override
+    public void clear() {
+        this.glasses.clear();
+    }
+
+    @Override
+    public void color(final byte value) {
+        this.glasses.color(value);
+    }
+
+    @Override
+    public void point(final short x, final short y) {
+        this.glasses.point(x, y);
+    }
+
+    @Override
+    public void line(final short x1, final short y1, final short x2, final short y2) {
+        this.glasses.line(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void rect(final short x1, final short y1, final short x2, final short y2) {
+        this.glasses.rect(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void rectf(final short x1, final short y1, final short x2, final short y2) {
+        this.glasses.rectf(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void circ(final short x, final short y, final byte r) {
+        this.glasses.circ(x, y, r);
+    }
+
+    @Override
+    public void circf(final short x, final short y, final byte r) {
+        this.glasses.circf(x, y, r);
+    }
+
+    @Override
+    public void txt(final short x, final short y, final Rotation r, final byte f, final byte c, final String s) {
+        this.glasses.txt(x, y, r, f, c, s);
+    }
+
+    @Override
+    public void polyline(final short[] xys) {
+        this.glasses.polyline(xys);
+    }
+
+    @Override
+    public void imgDisplay(final byte id, final short x, final short y) {
+        this.glasses.imgDisplay(id, x, y);
+    }
+
+    @Override
+    public void layoutDisplay(final byte id, final String text) {
+        this.glasses.layoutDisplay(id, text);
+    }
+
+    @Override
+    public void layoutDisplayExtended(final byte id, final short x, final byte y, final String text) {
+        this.glasses.layoutDisplayExtended(id, x, y, text);
+    }
+
+    @Override
+    public void layoutClear(final byte id) {
+        this.glasses.layoutClear(id);
+    }
+
+    @Override
+    public void gaugeDisplay(final byte id, final byte value) {
+        this.glasses.gaugeDisplay(id, value);
+    }
+
+    @Override
+    public void pageDisplay(final byte id, final String[] texts) {
+        this.glasses.pageDisplay(id, texts);
+    }
+
+    @Override
+    public void pageClear(final byte id) {
+        this.glasses.pageClear(id);
+    }
+
+}
@@ -14,6 +14,7 @@ limitations under the License.
 */
 package com.activelook.activelooksdk.core;
 
+import com.activelook.activelooksdk.core.transport.FrameEncoder;
 import com.activelook.activelooksdk.types.ConfigurationDescription;
 import com.activelook.activelooksdk.types.ConfigurationElementsInfo;
 import com.activelook.activelooksdk.types.DemoPattern;
@@ -27,8 +28,10 @@ import com.activelook.activelooksdk.types.LayoutParameters;
 import com.activelook.activelooksdk.types.LedState;
 import com.activelook.activelooksdk.types.Rotation;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -122,12 +125,17 @@ public final class CommandData {
         }
     }
 
+    /*
+    The bytes are appended in place to a buffer growing by doubling, the data is made of its first length bytes
+     */
     private byte [] bytes;
+    private int length;
     private int offset;
 
     public CommandData(final byte ...bytes) {
         super();
         this.bytes = bytes;
+        this.length = bytes.length;
         this.offset = 0;
     }
 
@@ -136,15 +144,78 @@ public final class CommandData {
         System.arraycopy(src, start, this.bytes, 0, size);
     }
 
+    /**
+     * Create an empty command data that can hold the given number of bytes without growing.
+     *
+     * @param capacity The expected size of the data.
+     * @return The empty command data.
+     */
+    public static CommandData withCapacity(final int capacity) {
+        final CommandData data = new CommandData(new byte [capacity]);
+        data.length = 0;
+        return data;
+    }
+
+    /**
+     * Get the bytes of the data, in an array of the exact size.
+     * The buffer is trimmed when it is larger than the data, so that the array is never written by a later append.
+     *
+     * @return The bytes of the data.
+     */
     public final byte [] getBytes() {
+        if (this.length != this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, this.length);
+        }
         return this.bytes;
     }
 
+    /**
+     * Get a read only view of the bytes of the data, without copy.
+     * Later appends do not show in the view.
+     *
+     * @return The view of the data.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(this.bytes, 0, this.length).slice().asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return this.length;
+    }
+
+    /*
+    The buffer without copy, only its first size() bytes are data; appends never write over them
+     */
+    byte [] array() {
+        return this.bytes;
+    }
+
+    /**
+     * Make room to append the given number of bytes without growing.
+     *
+     * @param additional The number of bytes about to be appended.
+     * @return This command data.
+     */
+    public CommandData ensureCapacity(final int additional) {
+        final int required = this.length + additional;
+        if (required > this.bytes.length) {
+            this.grow(required);
+        }
+        return this;
+    }
+
+    /*
+    Kept out of ensureCapacity so that the appends stay small enough to be inlined
+     */
+    private void grow(final int required) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length * 2));
+    }
+
     public List<CommandData> split(final int chunkSize) {
-        final List<CommandData> chunks = new ArrayList<>();
+        final List<CommandData> chunks = new ArrayList<>((this.length + chunkSize - 1) / chunkSize);
         int offset = 0;
-        while (offset < this.bytes.length) {
-            final int currentSize = Math.min(chunkSize, this.bytes.length - offset);
+        while (offset < this.length) {
+            final int currentSize = Math.min(chunkSize, this.length - offset);
             chunks.add(new CommandData(this.bytes, offset, currentSize));
             offset += currentSize;
         }
@@ -152,85 +223,94 @@ public final class CommandData {
     }
 
     public String toHexString() {
-        StringBuilder result = new StringBuilder();
-        for (byte b : this.bytes) {
-            result.append(String.format("%02X", b));
+        StringBuilder result = new StringBuilder(this.length * 2);
+        for (int i = 0; i < this.length; i++) {
+            result.append(String.format("%02X", this.bytes[i]));
         }
         return result.toString();
     }
 
     public CommandData add(final byte ...bs) {
-        final byte [] as = this.bytes;
-        this.bytes = new byte [as.length + bs.length];
-        System.arraycopy(as, 0, this.bytes, 0, as.length);
-        System.arraycopy(bs, 0, this.bytes, as.length, bs.length);
-        return this;
+        return this.add(bs, bs.length);
     }
 
     public CommandData add(final CommandData otherData) {
-        return this.add(otherData.getBytes());
+        return this.add(otherData.bytes, otherData.length);
+    }
+
+    /*
+    Encode a frame at the end of the data
+     */
+    CommandData addFrame(final FrameEncoder frame) {
+        final int size = frame.getEncodedLength();
+        this.ensureCapacity(size);
+        frame.encode(this.bytes, this.length, -1);
+        this.length += size;
+        return this;
+    }
+
+    private CommandData add(final byte [] bs, final int size) {
+        this.ensureCapacity(size);
+        System.arraycopy(bs, 0, this.bytes, this.length, size);
+        this.length += size;
+        return this;
     }
 
     public CommandData addInt8(final byte ...bytes) {
-        final byte [] asBytes = new byte [bytes.length];
-        int i = 0;
-        for (final byte b : bytes) {
-            asBytes[i] = CommandData.Int8.asByte(b);
-            i += 1;
-        }
-        return this.add(asBytes);
+        return this.add(bytes);
     }
 
     public CommandData addUInt8(final short ...shorts) {
-        final byte [] asBytes = new byte [shorts.length];
-        int i = 0;
+        this.ensureCapacity(shorts.length);
         for (final short s : shorts) {
-            asBytes[i] = CommandData.UInt8.asByte(s);
-            i += 1;
+            this.bytes[this.length++] = CommandData.UInt8.asByte(s);
         }
-        return this.add(asBytes);
+        return this;
     }
 
     public CommandData addInt16(final short ...shorts) {
-        final byte [] asBytes = new byte [shorts.length * 2];
-        int i = 0;
+        this.ensureCapacity(shorts.length * 2);
         for (final short s : shorts) {
-            System.arraycopy(CommandData.Int16.asBytes(s), 0, asBytes, i, 2);
-            i += 2;
+            this.put16(s);
         }
-        return this.add(asBytes);
+        return this;
     }
 
     public CommandData addUInt16(final int ...ints) {
-        final byte [] asBytes = new byte [ints.length * 2];
-        int i = 0;
-        for (final int in: ints) {
-            System.arraycopy(CommandData.UInt16.asBytes(in), 0, asBytes, i, 2);
-            i += 2;
+        this.ensureCapacity(ints.length * 2);
+        for (final int in : ints) {
+            this.put16(in);
         }
-        return this.add(asBytes);
+        return this;
     }
 
     public CommandData addInt32(final int ...ints) {
-        final byte [] asBytes = new byte [ints.length * 4];
-        int i = 0;
-        for (final int in: ints) {
-            System.arraycopy(CommandData.Int32.asBytes(in), 0, asBytes, i, 4);
-            i += 4;
+        this.ensureCapacity(ints.length * 4);
+        for (final int in : ints) {
+            this.put32(in);
         }
-        return this.add(asBytes);
+        return this;
     }
 
     public CommandData addUInt32(final long ...longs) {
-        final byte [] asBytes = new byte [longs.length * 4];
-        int i = 0;
-        for (final long l: longs) {
-            System.arraycopy(CommandData.UInt32.asBytes(l), 0, asBytes, i, 4);
-            i += 4;
+        this.ensureCapacity(longs.length * 4);
+        for (final long l : longs) {
+            this.put32(l);
         }
-        return this.add(asBytes);
+        return this;
+    }
+
+    private void put16(final long value) {
+        this.bytes[this.length++] = (byte) (value >> 8);
+        this.bytes[this.length++] = (byte) value;
     }
 
+    private void put32(final long value) {
+        this.bytes[this.length++] = (byte) (value >> 24);
+        this.bytes[this.length++] = (byte) (value >> 16);
+        this.bytes[this.length++] = (byte) (value >> 8);
+        this.bytes[this.length++] = (byte) value;
+    }
 
     public CommandData addNonNulTerminatedString(String str) {
         this.add(str.getBytes(StandardCharsets.US_ASCII));
@@ -239,8 +319,10 @@ public final class CommandData {
 
     public CommandData addNulTerminatedStrings(final String ...strings) {
         for (final String str : strings) {
-            this.add(str.getBytes(StandardCharsets.US_ASCII));
-            this.add((byte) 0x00);
+            final byte [] asBytes = str.getBytes(StandardCharsets.US_ASCII);
+            this.ensureCapacity(asBytes.length + 1);
+            this.add(asBytes);
+            this.bytes[this.length++] = (byte) 0x00;
         }
         return this;
     }
@@ -425,7 +507,7 @@ public final class CommandData {
     /////////////
 
     private boolean hasNext() {
-        return this.offset < this.bytes.length;
+        return this.offset < this.length;
     }
 
     private byte readByte() {
@@ -0,0 +1,112 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import com.activelook.activelooksdk.CommandTemplate;
+
+/**
+ * A frame encoded once, without query id, with the offsets of its slots in the frame.
+ */
+final class CommandTemplateImpl implements CommandTemplate {
+
+    private static final int NO_SLOT = -1;
+
+    private final AbstractGlasses glasses;
+    private final byte[] frame;
+    private final int supersedeKey;
+    private final int valueSlot;
+    private final int positionSlot;
+    private final int textSlot;
+    private final int textWidth;
+
+    private CommandTemplateImpl(final AbstractGlasses glasses, final byte commandId, final CommandData data,
+            final int supersedeKey, final int valueSlot, final int positionSlot, final int textSlot,
+            final int textWidth) {
+        super();
+        this.glasses = glasses;
+        this.frame = new Command(commandId, data).toBytes();
+        this.supersedeKey = supersedeKey;
+        final int dataStart = this.frame.length - 1 - data.size();
+        this.valueSlot = valueSlot == NO_SLOT ? NO_SLOT : dataStart + valueSlot;
+        this.positionSlot = positionSlot == NO_SLOT ? NO_SLOT : dataStart + positionSlot;
+        this.textSlot = textSlot == NO_SLOT ? NO_SLOT : dataStart + textSlot;
+        this.textWidth = textWidth;
+    }
+
+    static CommandTemplate gaugeDisplay(final AbstractGlasses glasses, final byte id) {
+        final CommandData data = new CommandData().addUInt8(id).addUInt8((short) 0);
+        return new CommandTemplateImpl(glasses, AbstractGlasses.ID_gaugeDisplay, data,
+                AbstractGlasses.getDisplayKey(AbstractGlasses.ID_gaugeDisplay, id), 1, NO_SLOT, NO_SLOT, 0);
+    }
+
+    static CommandTemplate imgDisplay(final AbstractGlasses glasses, final byte id) {
+        final CommandData data = new CommandData().addUInt8(id).addInt16((short) 0, (short) 0);
+        return new CommandTemplateImpl(glasses, AbstractGlasses.ID_imgDisplay, data,
+                AbstractGlasses.NO_SUPERSEDE_KEY, NO_SLOT, 1, NO_SLOT, 0);
+    }
+
+    static CommandTemplate layoutDisplay(final AbstractGlasses glasses, final byte id, final int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid text width: %d", width));
+        }
+        final CommandData data = CommandData.withCapacity(width + 2).addUInt8(id);
+        for (int i = 0; i < width; i++) {
+            data.addInt8((byte) ' ');
+        }
+        data.addInt8((byte) 0x00);
+        return new CommandTemplateImpl(glasses, AbstractGlasses.ID_layoutDisplay, data,
+                AbstractGlasses.getDisplayKey(AbstractGlasses.ID_layoutDisplay, id), NO_SLOT, NO_SLOT, 1, width);
+    }
+
+    @Override
+    public CommandTemplate setValue(final byte value) {
+        checkSlot(this.valueSlot, "value");
+        this.frame[this.valueSlot] = value;
+        return this;
+    }
+
+    @Override
+    public CommandTemplate setPosition(final short x, final short y) {
+        checkSlot(this.positionSlot, "position");
+        this.frame[this.positionSlot] = (byte) (x >> 8);
+        this.frame[this.positionSlot + 1] = (byte) x;
+        this.frame[this.positionSlot + 2] = (byte) (y >> 8);
+        this.frame[this.positionSlot + 3] = (byte) y;
+        return this;
+    }
+
+    @Override
+    public CommandTemplate setText(final CharSequence text) {
+        checkSlot(this.textSlot, "text");
+        final int length = Math.min(text.length(), this.textWidth);
+        for (int i = 0; i < this.textWidth; i++) {
+            final char c = i < length ? text.charAt(i) : ' ';
+            this.frame[this.textSlot + i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        return this;
+    }
+
+    @Override
+    public void send() {
+        this.glasses.writeTemplate(this.frame, this.supersedeKey);
+    }
+
+    private static void checkSlot(final int slot, final String name) {
+        if (slot == NO_SLOT) {
+            throw new UnsupportedOperationException(String.format("This template has no %s slot", name));
+        }
+    }
+
+}
@@ -14,8 +14,6 @@ limitations under the License.
 */
 package com.activelook.activelooksdk.core;
 
-import android.util.Log;
-
 import java.nio.charset.StandardCharsets;
 
 public class Payload {
@@ -72,7 +70,6 @@ public class Payload {
     }
 
     public static final boolean isValidBuffer(byte[] payload) {
-        Log.d("Validating", Payload.bytesToStr(payload));
         int fullLength = 5;
         assert payload[0] == (byte) 0xFF;
         if ((payload[2] & 0x10) == 0x10) {
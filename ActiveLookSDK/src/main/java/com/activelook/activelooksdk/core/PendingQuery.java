@@ -0,0 +1,104 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.QueryHandle;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Query registered in place of its callback, so that the caller can cancel it.
+ * A listener can be notified when the query ends without response, even if it ended before the listener is set.
+ */
+final class PendingQuery implements QueryHandle, Consumer<byte[]> {
+
+    interface Listener {
+
+        void onFailure(Exception error);
+
+    }
+
+    private final QueryRegistry registry;
+    private final Consumer<byte[]> callback;
+    private volatile long id;
+    private volatile Listener listener;
+    private volatile Exception failure;
+
+    PendingQuery(final QueryRegistry registry, final Consumer<byte[]> callback) {
+        super();
+        this.registry = registry;
+        this.callback = callback;
+        this.id = QueryRegistry.NO_QUERY_ID;
+    }
+
+    void setId(final long id) {
+        this.id = id;
+    }
+
+    /*
+    Both fields are volatile: a failure racing with this call is notified at least once
+     */
+    void setListener(final Listener listener) {
+        this.listener = listener;
+        final Exception error = this.failure;
+        if (error != null) {
+            listener.onFailure(error);
+        }
+    }
+
+    /*
+    A response that cannot be decoded fails the query: the future of the query would never complete otherwise,
+    since its callback has already been released. Without listener, the error goes up to the caller.
+     */
+    @Override
+    public void accept(final byte[] bytes) {
+        try {
+            this.callback.accept(bytes);
+        } catch (RuntimeException e) {
+            this.fail(e);
+            if (this.listener == null) {
+                throw e;
+            }
+        }
+    }
+
+    /*
+    Called once the callback has been released because of a timeout, a cancellation or a disconnection
+     */
+    void fail(final Exception error) {
+        this.failure = error;
+        final Listener target = this.listener;
+        if (target != null) {
+            target.onFailure(error);
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        if (!this.registry.remove(this.id, this)) {
+            return false;
+        }
+        this.fail(new CancellationException("Query cancelled"));
+        return true;
+    }
+
+    @Override
+    public boolean isPending() {
+        return this.registry.isPending(this.id, this);
+    }
+
+}
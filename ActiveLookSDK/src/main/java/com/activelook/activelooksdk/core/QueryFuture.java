@@ -0,0 +1,86 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.QueryHandle;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Future of a query, given as the callback of the query and completed with its decoded result.
+ * Cancelling the future cancels the query.
+ */
+@RequiresApi(api = Build.VERSION_CODES.N)
+final class QueryFuture<T> extends CompletableFuture<T> implements Consumer<T>, PendingQuery.Listener {
+
+    private final Executor executor;
+    private volatile PendingQuery query;
+
+    /**
+     * @param executor The executor completing the future, or null to complete it on the calling thread.
+     */
+    QueryFuture(final Executor executor) {
+        super();
+        this.executor = executor;
+    }
+
+    /**
+     * @param handle The handle returned by the query this future is the callback of.
+     * @return This future.
+     */
+    QueryFuture<T> watch(final QueryHandle handle) {
+        this.query = (PendingQuery) handle;
+        this.query.setListener(this);
+        if (this.isCancelled()) {
+            this.query.cancel();
+        }
+        return this;
+    }
+
+    @Override
+    public void accept(final T result) {
+        if (this.executor == null) {
+            this.complete(result);
+        } else {
+            this.executor.execute(() -> this.complete(result));
+        }
+    }
+
+    @Override
+    public void onFailure(final Exception error) {
+        if (this.executor == null) {
+            this.completeExceptionally(error);
+        } else {
+            this.executor.execute(() -> this.completeExceptionally(error));
+        }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+        final PendingQuery pending = this.query;
+        if (cancelled && pending != null) {
+            pending.cancel();
+        }
+        return cancelled;
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.exceptions.GlassesDisconnectedException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Query ids allocation and pending callbacks, safe to use from any number of threads without lock.
+ * Ids come from an atomic counter and are 1 to 4 bytes wide. The callbacks are stored in a preallocated array of
+ * slots indexed by the low bits of the id, each slot remembering the full id of its query, so that sending a
+ * query and routing its response do not allocate.
+ * When the id space or the slots wrap around while a query is still pending, the next free slot is used instead,
+ * and a late response whose id does not match the query of the slot anymore is dropped.
+ * Deadlines are kept in a timer wheel: each bucket is a bitmap of the slots expiring during one tick, so that
+ * arming a deadline does not allocate either. Bits left by answered queries are skipped when their bucket is
+ * expired, and the wheels of all the registries are ticked by the shared QueryTimer.
+ */
+final class QueryRegistry {
+
+    static final long NO_QUERY_ID = -1;
+    static final int MIN_WIDTH = 1;
+    static final int MAX_WIDTH = 4;
+    static final long DEFAULT_TIMEOUT_MS = 10000;
+    static final long TICK_NS = TimeUnit.MILLISECONDS.toNanos(QueryTimer.TICK_MS);
+    private static final int SLOTS = 1024;
+    private static final long FREE = -1;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int BUCKETS = 32;
+    private static final int WORDS = SLOTS / Long.SIZE;
+
+    private final AtomicLong nextId;
+    private final AtomicReferenceArray<Consumer<byte[]>> callbacks;
+    private final AtomicLongArray slotIds;
+    private final AtomicLongArray sentAt;
+    private final AtomicLongArray deadlines;
+    private final AtomicLongArray wheel;
+    private final AtomicInteger pendingCount;
+    private final long origin;
+    private final Runnable onTimeout;
+    private volatile int width;
+    private volatile long timeoutNs;
+    private volatile long expiredTick;
+    /*
+    Written by the QueryTimer only
+     */
+    volatile boolean armed;
+
+    /**
+     * @param onTimeout Called on the timer thread for each query that times out.
+     */
+    QueryRegistry(final Runnable onTimeout) {
+        super();
+        this.nextId = new AtomicLong();
+        this.callbacks = new AtomicReferenceArray<>(SLOTS);
+        this.slotIds = new AtomicLongArray(SLOTS);
+        this.sentAt = new AtomicLongArray(SLOTS);
+        this.deadlines = new AtomicLongArray(SLOTS);
+        this.wheel = new AtomicLongArray(BUCKETS * WORDS);
+        this.pendingCount = new AtomicInteger();
+        for (int i = 0; i < SLOTS; i++) {
+            this.slotIds.set(i, FREE);
+        }
+        this.origin = System.nanoTime();
+        this.onTimeout = onTimeout;
+        this.width = MIN_WIDTH;
+        this.timeoutNs = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MS);
+        this.expiredTick = -1;
+    }
+
+    void setWidth(final int width) {
+        if (width < MIN_WIDTH || width > MAX_WIDTH) {
+            throw new IllegalArgumentException(String.format("Invalid query id width: %d bytes", width));
+        }
+        this.width = width;
+    }
+
+    int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @param timeoutMs The timeout of the queries registered from now on, or 0 for no timeout.
+     */
+    void setTimeout(final long timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException(String.format("Invalid query timeout: %d ms", timeoutMs));
+        }
+        this.timeoutNs = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    int getPendingCount() {
+        return this.pendingCount.get();
+    }
+
+    /**
+     * Allocate the id of a query and register its callback.
+     * A query without callback gets an id that no pending query holds, and never touches the slots. With 1 byte ids
+     * and every slot busy, it shares the id of a pending query, whose callback is kept.
+     * When every slot is busy, the callback of the query whose slot is reused is failed.
+     *
+     * @param callback The callback, or null if no response is expected.
+     * @param width    The width of the id, as read from getWidth by the caller.
+     * @return The query id.
+     */
+    long register(final Consumer<byte[]> callback, final int width) {
+        final long idMask = (1L << (8 * width)) - 1;
+        final int slotMask = (int) Math.min(SLOTS - 1, idMask);
+        if (callback == null) {
+            long id = NO_QUERY_ID;
+            for (int attempt = 0; attempt <= slotMask; attempt++) {
+                id = this.nextId.getAndIncrement() & idMask;
+                if (this.slotIds.get((int) id & slotMask) != id) {
+                    break;
+                }
+            }
+            return id;
+        }
+        for (int attempt = 0; attempt <= slotMask; attempt++) {
+            final long id = this.nextId.getAndIncrement() & idMask;
+            final int slot = (int) id & slotMask;
+            if (this.slotIds.compareAndSet(slot, FREE, id)) {
+                this.claim(slot, callback);
+                return id;
+            }
+        }
+        final long id = this.nextId.getAndIncrement() & idMask;
+        final int slot = (int) id & slotMask;
+        final long evictedId = this.slotIds.getAndSet(slot, id);
+        SdkLog.w("Query", "%d queries pending, query %d is failed", slotMask + 1, evictedId);
+        final Consumer<byte[]> evicted = this.claim(slot, callback);
+        if (evicted != null) {
+            fail(evicted, new IllegalStateException(
+                    String.format("Query %d failed, %d queries pending", evictedId, slotMask + 1)));
+        }
+        return id;
+    }
+
+    /**
+     * Remove the callback of a query.
+     *
+     * @param id The query id.
+     * @return The callback, or null if none is pending for this id.
+     */
+    Consumer<byte[]> take(final long id) {
+        if (id < 0) {
+            return null;
+        }
+        final int slot = this.getSlot(id);
+        if (this.slotIds.get(slot) != id) {
+            return null;
+        }
+        return this.release(slot, id);
+    }
+
+    /**
+     * Remove the callback of a query, only if it is still the given one.
+     *
+     * @param id       The query id.
+     * @param callback The callback registered for the query.
+     * @return True if the callback was pending and has been removed.
+     */
+    boolean remove(final long id, final Consumer<byte[]> callback) {
+        return this.isPending(id, callback) && this.release(this.getSlot(id), id) == callback;
+    }
+
+    boolean isPending(final long id, final Consumer<byte[]> callback) {
+        if (id < 0) {
+            return false;
+        }
+        final int slot = this.getSlot(id);
+        return this.slotIds.get(slot) == id && this.callbacks.get(slot) == callback;
+    }
+
+    long getSentAt(final long id) {
+        if (id < 0) {
+            return 0;
+        }
+        return this.sentAt.get(this.getSlot(id));
+    }
+
+    /**
+     * Expire the queries whose deadline is in a tick completely elapsed at the given time.
+     * Only called by the timer thread, and by tests with a time in the future.
+     *
+     * @param now The current time in nanoseconds.
+     * @return The number of queries that timed out.
+     */
+    synchronized int expire(final long now) {
+        final long nowTick = this.getTick(now);
+        int expired = 0;
+        for (long tick = Math.max(this.expiredTick + 1, nowTick - BUCKETS); tick < nowTick; tick++) {
+            expired += this.expireTick(tick);
+            this.expiredTick = tick;
+        }
+        return expired;
+    }
+
+    /**
+     * Remove the callback of a query and fail it, when its command could not be sent.
+     *
+     * @param id    The query id.
+     * @param error The cause of the failure.
+     * @return True if the query was pending and has been failed.
+     */
+    boolean fail(final long id, final Exception error) {
+        final Consumer<byte[]> callback = this.take(id);
+        if (callback == null) {
+            return false;
+        }
+        fail(callback, error);
+        return true;
+    }
+
+    /**
+     * Remove the callbacks of all the pending queries and fail them, once the glasses are disconnected.
+     *
+     * @return The number of queries failed.
+     */
+    int failAll() {
+        final GlassesDisconnectedException error = new GlassesDisconnectedException();
+        int failed = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            final long id = this.slotIds.get(slot);
+            if (id == FREE) {
+                continue;
+            }
+            final Consumer<byte[]> callback = this.release(slot, id);
+            if (callback != null) {
+                failed++;
+                fail(callback, error);
+            }
+        }
+        return failed;
+    }
+
+    /*
+    Helpers
+     */
+    private int getSlotMask() {
+        return (int) Math.min(SLOTS - 1, (1L << (8 * this.width)) - 1);
+    }
+
+    private int getSlot(final long id) {
+        return (int) (id & (SLOTS - 1)) & this.getSlotMask();
+    }
+
+    private long getTick(final long time) {
+        return (time - this.origin) / TICK_NS;
+    }
+
+    /*
+    The deadline is armed once the callback is visible, so that the timer never expires a half claimed slot
+     */
+    private Consumer<byte[]> claim(final int slot, final Consumer<byte[]> callback) {
+        final long now = System.nanoTime();
+        final long timeout = this.timeoutNs;
+        final long deadline = timeout > 0 ? now + timeout : NO_DEADLINE;
+        this.sentAt.set(slot, now);
+        this.deadlines.set(slot, deadline);
+        final Consumer<byte[]> previous = this.callbacks.getAndSet(slot, callback);
+        if (previous == null) {
+            this.pendingCount.incrementAndGet();
+        }
+        if (deadline != NO_DEADLINE) {
+            this.arm(slot, deadline);
+        }
+        return previous;
+    }
+
+    private void arm(final int slot, final long deadline) {
+        this.schedule(slot, Math.max(this.getTick(deadline), this.expiredTick + 1));
+        if (!this.armed) {
+            QueryTimer.arm(this);
+        }
+    }
+
+    private Consumer<byte[]> release(final int slot, final long id) {
+        final Consumer<byte[]> callback = this.callbacks.getAndSet(slot, null);
+        this.slotIds.compareAndSet(slot, id, FREE);
+        if (callback != null) {
+            this.pendingCount.decrementAndGet();
+        }
+        return callback;
+    }
+
+    private void schedule(final int slot, final long tick) {
+        final int word = (int) (tick & (BUCKETS - 1)) * WORDS + slot / Long.SIZE;
+        final long bit = 1L << (slot % Long.SIZE);
+        long bits;
+        do {
+            bits = this.wheel.get(word);
+        } while ((bits & bit) == 0 && !this.wheel.compareAndSet(word, bits, bits | bit));
+    }
+
+    private int expireTick(final long tick) {
+        final int bucket = (int) (tick & (BUCKETS - 1));
+        int expired = 0;
+        for (int word = 0; word < WORDS; word++) {
+            long bits = this.wheel.getAndSet(bucket * WORDS + word, 0);
+            while (bits != 0) {
+                final int slot = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (this.expireSlot(slot, tick, bucket)) {
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /*
+    The bit of a slot may belong to an answered query: the slot is then free, or its new deadline is in another
+    bucket, where it has its own bit
+     */
+    private boolean expireSlot(final int slot, final long tick, final int bucket) {
+        final long id = this.slotIds.get(slot);
+        final long deadline = this.deadlines.get(slot);
+        if (id == FREE || deadline == NO_DEADLINE) {
+            return false;
+        }
+        final long deadlineTick = this.getTick(deadline);
+        if (deadlineTick > tick) {
+            if ((deadlineTick & (BUCKETS - 1)) == bucket) {
+                this.schedule(slot, deadlineTick);
+            }
+            return false;
+        }
+        final Consumer<byte[]> callback = this.release(slot, id);
+        if (callback == null) {
+            return false;
+        }
+        SdkLog.w("Query", "Query %d timed out", id);
+        this.onTimeout.run();
+        fail(callback, new TimeoutException(String.format("Query %d timed out", id)));
+        return true;
+    }
+
+    private static void fail(final Consumer<byte[]> callback, final Exception error) {
+        if (callback instanceof PendingQuery) {
+            ((PendingQuery) callback).fail(error);
+        }
+    }
+
+}
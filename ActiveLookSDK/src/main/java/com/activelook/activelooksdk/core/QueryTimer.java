@@ -0,0 +1,101 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single daemon thread ticking the timer wheels of the query registries with pending queries.
+ * The ticks stop as soon as no query is pending anymore, so that idle glasses do not wake the device up.
+ */
+final class QueryTimer {
+
+    static final long TICK_MS = 100;
+    private static final QueryTimer SHARED = new QueryTimer();
+
+    private final List<QueryRegistry> registries;
+    private ScheduledExecutorService executorService;
+    private ScheduledFuture<?> ticks;
+
+    private QueryTimer() {
+        super();
+        this.registries = new ArrayList<>();
+    }
+
+    static void arm(final QueryRegistry registry) {
+        SHARED.add(registry);
+    }
+
+    /*
+    Helpers
+     */
+    private synchronized void add(final QueryRegistry registry) {
+        if (registry.armed) {
+            return;
+        }
+        registry.armed = true;
+        this.registries.add(registry);
+        if (this.ticks == null) {
+            if (this.executorService == null) {
+                this.executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "ActiveLook query timer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            this.ticks = this.executorService.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void remove(final QueryRegistry registry) {
+        registry.armed = false;
+        this.registries.remove(registry);
+        if (this.registries.isEmpty()) {
+            this.ticks.cancel(false);
+            this.ticks = null;
+        }
+    }
+
+    /*
+    A query registered while its registry is being disarmed sees it still armed: the registry is armed again
+     */
+    private void tick() {
+        final QueryRegistry[] armed;
+        synchronized (this) {
+            armed = this.registries.toArray(new QueryRegistry[0]);
+        }
+        final long now = System.nanoTime();
+        for (final QueryRegistry registry : armed) {
+            try {
+                registry.expire(now);
+            } catch (RuntimeException e) {
+                SdkLog.e("Query", "Query timeout failed", e);
+            }
+            if (registry.getPendingCount() == 0) {
+                this.remove(registry);
+                if (registry.getPendingCount() > 0) {
+                    this.add(registry);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core;
+
+import android.util.Log;
+
+import com.activelook.activelooksdk.types.LogLevel;
+
+/**
+ * Logging facade of the SDK.
+ * Messages below the current level are dropped before formatting. The fixed arity methods avoid the varargs
+ * array, so that a disabled log does not allocate as long as its arguments are objects that already exist.
+ * Primitive arguments are boxed by the caller, hot paths should check isLoggable first.
+ * Byte dumps are only written for the connections that enabled byte tracing.
+ * Logs go to android.util.Log unless another sink is set, for instance to run the transport engine on the JVM.
+ */
+public final class SdkLog {
+
+    /**
+     * Destination of the formatted logs.
+     */
+    public interface Sink {
+
+        void log(LogLevel level, String tag, String message, Throwable error);
+
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static volatile LogLevel level = LogLevel.WARN;
+    private static volatile Sink sink = SdkLog::androidLog;
+
+    private SdkLog() {
+        super();
+    }
+
+    public static void setLevel(final LogLevel level) {
+        SdkLog.level = level;
+    }
+
+    public static LogLevel getLevel() {
+        return SdkLog.level;
+    }
+
+    public static void setSink(final Sink sink) {
+        SdkLog.sink = sink;
+    }
+
+    public static boolean isLoggable(final LogLevel level) {
+        return level.compareTo(SdkLog.level) >= 0 && level != LogLevel.NONE;
+    }
+
+    public static void v(final String tag, final String message) {
+        log(LogLevel.VERBOSE, tag, message, null, 0, null, null, null);
+    }
+
+    public static void v(final String tag, final String format, final Object arg) {
+        log(LogLevel.VERBOSE, tag, format, null, 1, arg, null, null);
+    }
+
+    public static void v(final String tag, final String format, final Object arg1, final Object arg2) {
+        log(LogLevel.VERBOSE, tag, format, null, 2, arg1, arg2, null);
+    }
+
+    public static void d(final String tag, final String message) {
+        log(LogLevel.DEBUG, tag, message, null, 0, null, null, null);
+    }
+
+    public static void d(final String tag, final String format, final Object arg) {
+        log(LogLevel.DEBUG, tag, format, null, 1, arg, null, null);
+    }
+
+    public static void d(final String tag, final String format, final Object arg1, final Object arg2) {
+        log(LogLevel.DEBUG, tag, format, null, 2, arg1, arg2, null);
+    }
+
+    public static void d(final String tag, final String format, final Object arg1, final Object arg2,
+                         final Object arg3) {
+        log(LogLevel.DEBUG, tag, format, null, 3, arg1, arg2, arg3);
+    }
+
+    public static void i(final String tag, final String message) {
+        log(LogLevel.INFO, tag, message, null, 0, null, null, null);
+    }
+
+    public static void i(final String tag, final String format, final Object arg) {
+        log(LogLevel.INFO, tag, format, null, 1, arg, null, null);
+    }
+
+    public static void i(final String tag, final String format, final Object arg1, final Object arg2) {
+        log(LogLevel.INFO, tag, format, null, 2, arg1, arg2, null);
+    }
+
+    public static void w(final String tag, final String message) {
+        log(LogLevel.WARN, tag, message, null, 0, null, null, null);
+    }
+
+    public static void w(final String tag, final String format, final Object arg) {
+        log(LogLevel.WARN, tag, format, null, 1, arg, null, null);
+    }
+
+    public static void w(final String tag, final String format, final Object arg1, final Object arg2) {
+        log(LogLevel.WARN, tag, format, null, 2, arg1, arg2, null);
+    }
+
+    public static void w(final String tag, final String format, final Object arg1, final Object arg2,
+                         final Object arg3) {
+        log(LogLevel.WARN, tag, format, null, 3, arg1, arg2, arg3);
+    }
+
+    public static void e(final String tag, final String message) {
+        log(LogLevel.ERROR, tag, message, null, 0, null, null, null);
+    }
+
+    public static void e(final String tag, final String message, final Throwable error) {
+        log(LogLevel.ERROR, tag, message, error, 0, null, null, null);
+    }
+
+    public static void e(final String tag, final String format, final Object arg) {
+        log(LogLevel.ERROR, tag, format, null, 1, arg, null, null);
+    }
+
+    public static void e(final String tag, final String format, final Object arg1, final Object arg2) {
+        log(LogLevel.ERROR, tag, format, null, 2, arg1, arg2, null);
+    }
+
+    /**
+     * Write a byte dump. The caller checks that byte tracing is enabled for its connection.
+     *
+     * @param tag     The log tag.
+     * @param message The message printed before the bytes.
+     * @param bytes   The bytes to dump.
+     * @param offset  The offset of the first byte to dump.
+     * @param length  The number of bytes to dump.
+     */
+    public static void dump(final String tag, final String message, final byte[] bytes, final int offset,
+                            final int length) {
+        final StringBuilder result = new StringBuilder(message.length() + 3 + 3 * length);
+        result.append(message).append(" [");
+        for (int i = offset; i < offset + length; i++) {
+            result.append(' ').append(HEX_DIGITS[(bytes[i] >> 4) & 0x0F]).append(HEX_DIGITS[bytes[i] & 0x0F]);
+        }
+        SdkLog.sink.log(LogLevel.DEBUG, tag, result.append(" ]").toString(), null);
+    }
+
+    public static void dump(final String tag, final String message, final byte[] bytes) {
+        dump(tag, message, bytes, 0, bytes.length);
+    }
+
+    /*
+    Helpers
+     */
+    private static void log(final LogLevel level, final String tag, final String format, final Throwable error,
+                            final int argCount, final Object arg1, final Object arg2, final Object arg3) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        final String message;
+        if (argCount == 0) {
+            message = format;
+        } else if (argCount == 1) {
+            message = String.format(format, arg1);
+        } else if (argCount == 2) {
+            message = String.format(format, arg1, arg2);
+        } else {
+            message = String.format(format, arg1, arg2, arg3);
+        }
+        SdkLog.sink.log(level, tag, message, error);
+    }
+
+    private static void androidLog(final LogLevel level, final String tag, final String message,
+                                   final Throwable error) {
+        if (level == LogLevel.VERBOSE) {
+            Log.v(tag, message);
+        } else if (level == LogLevel.DEBUG) {
+            Log.d(tag, message);
+        } else if (level == LogLevel.INFO) {
+            Log.i(tag, message);
+        } else if (level == LogLevel.WARN) {
+            Log.w(tag, message);
+        } else {
+            Log.e(tag, message, error);
+        }
+    }
+
+}
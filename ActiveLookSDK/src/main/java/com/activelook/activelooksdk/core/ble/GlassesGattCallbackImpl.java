@@ -22,49 +22,50 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
-import android.util.Log;
 
 import androidx.core.util.Consumer;
 
 import com.activelook.activelooksdk.Glasses;
 import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.core.transport.ExecutorScheduler;
+import com.activelook.activelooksdk.core.transport.SerialExecutor;
+import com.activelook.activelooksdk.core.transport.Transport;
+import com.activelook.activelooksdk.core.transport.TransportEngine;
 import com.activelook.activelooksdk.types.DeviceInformation;
-import com.activelook.activelooksdk.types.FlowControlStatus;
-import com.activelook.activelooksdk.types.Utils;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
-class GlassesGattCallbackImpl extends BluetoothGattCallback {
+/**
+ * GATT provider of the transport: connection, services discovery and characteristics of the glasses.
+ * The commands queueing, packing and flow control are handled by the transport engine.
+ * The Bluetooth thread only reassembles the notified frames: their decoding and the callbacks run in order on
+ * the callback executor, so that a slow callback does not delay the next write acknowledgements.
+ */
+class GlassesGattCallbackImpl extends BluetoothGattCallback implements Transport {
 
+    /*
+    Thread running the callbacks of all the glasses that are not given their own executor
+     */
+    private static final Executor SHARED_CALLBACK_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "ActiveLook callbacks");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final BluetoothDevice device;
     private final DeviceInformation deviceInfo;
-    private final ConcurrentLinkedDeque<byte []> pendingWriteRxCharacteristic;
-    private final AtomicBoolean flowControlCanSend;
-    private final AtomicBoolean isWritingCommand;
     private final BluetoothGatt gatt;
-    private final ScheduledExecutorService executorService;
-    private int mtu;
+    private final TransportEngine engine;
+    private final SerialExecutor callbacks;
     private GlassesImpl glasses;
     private Consumer<Glasses> onConnected;
     private Consumer<Glasses> onDisconnected;
     private Runnable onConnectionFail;
-    private byte[] pendingBuffer;
     private Consumer<Integer> onBatteryLevelEvent;
-    private Consumer<FlowControlStatus> onFlowControlEvent;
     private Runnable onSensorInterfaceEvent;
-    private ScheduledFuture<?> repairFlowControl;
+    private volatile boolean traceBytes;
 
     GlassesGattCallbackImpl(BluetoothDevice device, GlassesImpl bleGlasses,
                             Consumer<Glasses> onConnected,
@@ -73,16 +74,18 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
         super();
         this.device = device;
         this.deviceInfo = new DeviceInformation();
-        this.pendingWriteRxCharacteristic = new ConcurrentLinkedDeque<>();
-        this.flowControlCanSend = new AtomicBoolean(true);
-        this.isWritingCommand = new AtomicBoolean(false);
-        this.executorService = Executors.newSingleThreadScheduledExecutor();
-        this.mtu = 20;
+        this.engine = new TransportEngine(this, new ExecutorScheduler());
+        this.callbacks = new SerialExecutor(SHARED_CALLBACK_EXECUTOR);
+        this.engine.setOnFrame(frame -> this.callbacks.execute(() -> {
+            final Command command = new Command(frame);
+            SdkLog.d("onTXChanged", "%s", command);
+            this.glasses.callCallback(command);
+        }));
+        // A stack that keeps refusing writes is not going to recover, the link is torn down
+        this.engine.setOnWriteFailed(this::disconnect);
         this.glasses = bleGlasses;
         this.onBatteryLevelEvent = null;
-        this.onFlowControlEvent = null;
         this.onSensorInterfaceEvent = null;
-        this.repairFlowControl = null;
         final SdkImpl sdk = BleSdkSingleton.getInstance();
         this.setOnConnect(onConnected);
         this.setOnConnectionFail(onConnectionFail);
@@ -111,11 +114,11 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
     public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
         super.onMtuChanged(gatt, mtu, status);
         if (status == BluetoothGatt.GATT_SUCCESS) {
-            this.mtu = mtu;
-            Log.i("MTU", String.format("MTU=%d, status=%d", mtu, status));
+            this.engine.onMtuChanged(mtu);
+            SdkLog.i("MTU", "MTU=%d, status=%d", mtu, status);
             this.gatt.discoverServices();
         } else {
-            Log.e("MTU", String.format("MTU=%d, status=%d", mtu, status));
+            SdkLog.e("MTU", "MTU=%d, status=%d", mtu, status);
             this.gatt.requestMtu(mtu);
         }
     }
@@ -150,7 +153,7 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
             this.setOnConnectionFail(null);
             if (this.onConnected != null) {
                 this.onConnected.accept(this.glasses);
-                Log.e("onDescriptorWrite", "DONE");
+                SdkLog.i("onDescriptorWrite", "DONE");
             }
         }
     }
@@ -159,82 +162,33 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
     public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
         super.onCharacteristicWrite(gatt, characteristic, status);
         if (characteristic.equals(this.getRxCharacteristic())) {
-            // this.isWritingCommand.set(false);
-            // this.unstackWriteRxCharacteristic();
-            executorService.schedule(() -> {
-                this.isWritingCommand.set(false);
-                this.unstackWriteRxCharacteristic();
-            }, 25, TimeUnit.MILLISECONDS);
+            this.engine.onWriteComplete();
         }
     }
 
     @Override
     public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
         super.onCharacteristicChanged(gatt, characteristic);
-        Log.e("onCharacteristicChanged", characteristic.getUuid().toString());
+        SdkLog.v("onCharacteristicChanged", "%s", characteristic.getUuid());
         if (characteristic.getUuid().equals(BleUUID.ActiveLookTxCharacteristic)) {
-            byte[] buffer = characteristic.getValue();
-            if (this.pendingBuffer != null) {
-                this.addPendingBuffer(buffer);
-                buffer = this.pendingBuffer;
-                if (Command.isValidBuffer(buffer)) {
-                    this.pendingBuffer = null;
-                    final Command command = new Command(buffer);
-                    Log.e("onTXChanged Buffered", command.toString());
-                    this.glasses.callCallback(command);
-                }
-            } else if (Command.isValidBuffer(buffer)) {
-                final Command command = new Command(buffer);
-                Log.e("onTXChanged", command.toString());
-                this.glasses.callCallback(command);
-            } else {
-                this.addPendingBuffer(buffer);
-            }
+            this.engine.onReceived(characteristic.getValue());
         } else if (characteristic.getUuid().equals(BleUUID.BatteryLevelCharacteristic)) {
-            if (this.onBatteryLevelEvent != null) {
-                this.onBatteryLevelEvent.accept((int) characteristic.getValue()[0]);
+            final Consumer<Integer> onEvent = this.onBatteryLevelEvent;
+            if (onEvent != null) {
+                final int level = characteristic.getValue()[0];
+                this.callbacks.execute(() -> onEvent.accept(level));
             }
         } else if (characteristic.getUuid().equals(BleUUID.ActiveLookSensorInterfaceCharacteristic)) {
-            if (this.onSensorInterfaceEvent != null) {
-                this.onSensorInterfaceEvent.run();
+            final Runnable onEvent = this.onSensorInterfaceEvent;
+            if (onEvent != null) {
+                this.callbacks.execute(onEvent);
             }
         } else if (characteristic.getUuid().equals(BleUUID.ActiveLookFlowControlCharacteristic)) {
-            final byte state = characteristic.getValue()[0];
-            if (state == (byte) 0x01) {
-                if (this.repairFlowControl != null) {
-                    this.repairFlowControl.cancel(false);
-                    this.repairFlowControl = null;
-                }
-                Log.e("FLOW CONTROL", String.format("Glasses flow control CAN SEND"));
-                if (this.flowControlCanSend.compareAndSet(false, true)) {
-                    this.unstackWriteRxCharacteristic();
-                }
-            } else if (state == (byte) 0x02) {
-                Log.e("FLOW CONTROL", String.format("Glasses flow control STOP SEND"));
-                this.flowControlCanSend.set(false);
-                if (this.repairFlowControl != null) {
-                    this.repairFlowControl.cancel(true);
-                }
-                this.repairFlowControl = executorService.schedule(() -> {
-                    GlassesGattCallbackImpl.this.repairFlowControl = null;
-                    Log.e("FLOW CONTROL", String.format("Glasses flow control FORCED CAN SEND"));
-                    if (GlassesGattCallbackImpl.this.flowControlCanSend.compareAndSet(false, true)) {
-                        GlassesGattCallbackImpl.this.unstackWriteRxCharacteristic();
-                    }
-                }, 2000, TimeUnit.MILLISECONDS);
-            } else if (this.onFlowControlEvent != null) {
-                if (state == (byte) 0x03) {
-                    this.onFlowControlEvent.accept(FlowControlStatus.CMD_ERROR);
-                } else if (state == (byte) 0x04) {
-                    this.onFlowControlEvent.accept(FlowControlStatus.OVERFLOW);
-                } else if (state == (byte) 0x06) {
-                    this.onFlowControlEvent.accept(FlowControlStatus.MISSING_CONFIG_ID);
-                } else { // if (state == (byte) 0x05) {
-                    this.onFlowControlEvent.accept(FlowControlStatus.RESERVED);
-                }
-            }
+            this.engine.onFlowControl(characteristic.getValue()[0]);
         } else {
-            Log.e("onCharacteristicChanged", Command.bytesToStr(characteristic.getValue()));
+            if (this.traceBytes) {
+                SdkLog.dump("onCharacteristicChanged", characteristic.getUuid().toString(), characteristic.getValue());
+            }
         }
     }
 
@@ -246,7 +200,7 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
     @Override
     public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
         super.onDescriptorWrite(gatt, descriptor, status);
-        Log.e("onDescriptorWrite", descriptor.getCharacteristic().getUuid().toString());
+        SdkLog.d("onDescriptorWrite", "%s", descriptor.getCharacteristic().getUuid());
         if (descriptor.getCharacteristic().getUuid().equals(BleUUID.ActiveLookFlowControlCharacteristic)) {
             this.activateNotification(this.getTxCharacteristic());
         } else if (descriptor.getCharacteristic().getUuid().equals(BleUUID.ActiveLookTxCharacteristic)) {
@@ -289,150 +243,47 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
         this.onConnected = onConnected;
     }
 
-    private final Lock flushLock = new ReentrantLock();
-    private final Condition writeQueueEmpty = flushLock.newCondition();
-
-    /* Waint until write queue is empty; timeout 5 seconds */
-    void flushWrites() {
-        flushLock.lock();
-        try {
-            while (pendingWriteRxCharacteristic.size() > 0 || isWritingCommand.get()) {
-                boolean timedOut = !writeQueueEmpty.await(5, TimeUnit.SECONDS);
-                if (timedOut) {
-                    Log.e("glassTest", "Timed out when waiting for queue flush");
-                    break;
-                }
-            }
-        } catch (InterruptedException e) {
-            // What to do?
-            ;
-        } finally {
-            flushLock.unlock();
-        }
+    TransportEngine getEngine() {
+        return this.engine;
     }
 
-    void writeRxCharacteristic(byte[] bytes) {
-        final byte [][] chunks = Utils.split(bytes, this.mtu);
-        this.pendingWriteRxCharacteristic.addAll(Arrays.asList(chunks));
-        this.unstackWriteRxCharacteristic();
+    /*
+    Run a callback after the ones already dispatched for these glasses
+     */
+    void dispatch(Runnable callback) {
+        this.callbacks.execute(callback);
     }
 
-    private byte[] joinArrays(List<byte[]> inp, int totalLen) {
-        byte[] result = new byte[totalLen];
-        int offset = 0;
-        for (byte[] cmd : inp) {
-            System.arraycopy(cmd, 0, result, offset, cmd.length);
-            offset += cmd.length;
-        }
-        return result;
+    void setCallbackExecutor(Executor executor) {
+        this.callbacks.setDelegate(executor != null ? executor : SHARED_CALLBACK_EXECUTOR);
     }
 
-    /* Fill payload up to MTU */
-    private byte[] unstackPayload() {
-        ArrayList<byte[]> stack = new ArrayList<>();
-        int stackSize = 0;
-        flushLock.lock();
-        try {
-            while (stack.size() < 2) {
-                byte[] cmd = this.pendingWriteRxCharacteristic.peek();
-                if (cmd == null || stackSize + cmd.length > this.mtu)
-                    break;
-                // Remove the first command that is in 'cmd'
-                this.pendingWriteRxCharacteristic.poll();
-                stack.add(cmd);
-                stackSize += cmd.length;
-            }
-            if (pendingWriteRxCharacteristic.size() == 0) {
-                writeQueueEmpty.signal();
-            }
-        } finally {
-            flushLock.unlock();
-        }
-        return joinArrays(stack, stackSize);
+    void setByteTracing(boolean enabled) {
+        this.traceBytes = enabled;
+        this.engine.setByteTracing(enabled);
     }
 
     @SuppressLint("MissingPermission")
-    private void sendPayload(byte[] payload) {
-        boolean valueSet = false;
-        for (int i=0; i < 5; i++) {
-            if (this.getRxCharacteristic().setValue(payload)) {
-                valueSet = true;
-                break;
-            }
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            Log.e("unstackWriteCommand", String.format("Could not update rx: %s", Utils.bytesToHexString(payload)));
-        }
-        if (!valueSet) {
-            Log.e("unstackWriteCommand", "Could not update rx; giving up.");
-            return;
-        }
-
-        valueSet = false;
-        for (int i = 0; i < 5; i++) {
-            if (this.gatt.writeCharacteristic(this.getRxCharacteristic())) {
-                valueSet = true;
-                break;
-            }
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            Log.e("unstackWriteCommand", String.format("Could not write rx: %s", Utils.bytesToHexString(payload)));
-        }
-        if (!valueSet) {
-            Log.e("unstackWriteCommand", "Could not write rx, giving up");
-        }
-    }
-
-    synchronized void unstackWriteRxCharacteristic() {
-        if (this.flowControlCanSend.get() && this.pendingWriteRxCharacteristic.size()>0 && this.isWritingCommand.compareAndSet(false, true)) {
-            final byte[] payload = unstackPayload();
-            Log.d("unstackWriteCommand", String.format("write rx: %s", Utils.bytesToHexString(payload)));
-            sendPayload(payload);
-        } else {
-            Log.d("unstackWriteCommand", String.format("Stacking %d", this.pendingWriteRxCharacteristic.size()));
-            if (!this.flowControlCanSend.get()) {
-                Log.d("unstackWriteCommand", String.format("flow control busy"));
-            }
-            if (this.isWritingCommand.get()) {
-                Log.d("unstackWriteCommand", String.format("already writing"));
-            }
-            if (this.pendingWriteRxCharacteristic.size()==0) {
-                Log.d("unstackWriteCommand", String.format("nothing to send"));
-                // After setting isWriting to fals, unstackWriteRxCharacteristic() is called;
-                // if the queue is empty, signal to the flush
-                flushLock.lock();
-                writeQueueEmpty.signal();
-                flushLock.unlock();
-            }
-        }
+    @Override
+    public boolean write(byte[] packet, boolean withoutResponse) {
+        final BluetoothGattCharacteristic rx = this.getRxCharacteristic();
+        rx.setWriteType(withoutResponse
+                ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        return rx.setValue(packet) && this.gatt.writeCharacteristic(rx);
     }
 
     void disconnect() {
         this.gatt.disconnect();
         this.gatt.close();
+        this.engine.close();
+        this.glasses.onDisconnected();
         BleSdkSingleton.getInstance().unregisterConnectedGlasses(this.glasses);
     }
 
     /*
     Helpers
      */
-    private void addPendingBuffer(final byte[] buffer) {
-        if (this.pendingBuffer == null) {
-            this.pendingBuffer = buffer;
-        } else {
-            byte[] newPending = new byte[this.pendingBuffer.length + buffer.length];
-            System.arraycopy(this.pendingBuffer, 0, newPending, 0, this.pendingBuffer.length);
-            System.arraycopy(buffer, 0, newPending, this.pendingBuffer.length, buffer.length);
-            this.pendingBuffer = newPending;
-        }
-    }
-
     private void activateNotification(final BluetoothGattCharacteristic characteristic) {
         this.gatt.setCharacteristicNotification(characteristic, true);
         final BluetoothGattDescriptor descriptor = characteristic.getDescriptor(BleUUID.BleNotificationDescriptor);
@@ -476,10 +327,6 @@ class GlassesGattCallbackImpl extends BluetoothGattCallback {
         this.onBatteryLevelEvent = onEvent;
     }
 
-    public void subscribeToFlowControlNotifications(Consumer<FlowControlStatus> onEvent) {
-        this.onFlowControlEvent = onEvent;
-    }
-
     public void subscribeToSensorInterfaceNotifications(Runnable onEvent) {
         this.onSensorInterfaceEvent = onEvent;
     }
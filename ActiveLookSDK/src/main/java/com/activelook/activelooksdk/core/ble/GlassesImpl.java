@@ -16,17 +16,27 @@ package com.activelook.activelooksdk.core.ble;
 
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothDevice;
+import android.os.Build;
 import android.os.Parcel;
-import android.util.Log;
 
+import androidx.annotation.RequiresApi;
 import androidx.core.util.Consumer;
 
 import com.activelook.activelooksdk.DiscoveredGlasses;
 import com.activelook.activelooksdk.Glasses;
 import com.activelook.activelooksdk.core.AbstractGlasses;
 import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.core.transport.TransportEngine;
+import com.activelook.activelooksdk.types.CommandPriority;
+import com.activelook.activelooksdk.types.ConnectionMetrics;
 import com.activelook.activelooksdk.types.DeviceInformation;
 import com.activelook.activelooksdk.types.FlowControlStatus;
+import com.activelook.activelooksdk.types.QueueDepth;
+import com.activelook.activelooksdk.types.QueueFullPolicy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 class GlassesImpl extends AbstractGlasses implements Glasses {
 
@@ -42,6 +52,7 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
         }
     };
     private final GlassesGattCallbackImpl gattCallbacks;
+    private final TransportEngine engine;
 
     private String manufacturer;
     private BluetoothDevice device;
@@ -58,6 +69,8 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
                 onConnected,
                 () -> onConnectionFail.accept(discoveredGlasses),
                 onDisconnected);
+        this.engine = this.gattCallbacks.getEngine();
+        this.engine.setOnDropped(this::failDroppedQueries);
     }
 
     GlassesImpl(String address, Consumer<Glasses> onConnected,
@@ -73,6 +86,8 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
                 onConnected,
                 () -> onConnectionFail.accept(address),
                 onDisconnected);
+        this.engine = this.gattCallbacks.getEngine();
+        this.engine.setOnDropped(this::failDroppedQueries);
     }
 
     protected GlassesImpl(Parcel in) {
@@ -83,13 +98,18 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
         GlassesImpl registered = sdk.getConnectedBleGlasses(this.getAddress());
         this.gattCallbacks = registered.gattCallbacks;
         this.gattCallbacks.updateRef(this);
+        this.engine = this.gattCallbacks.getEngine();
+        this.engine.setOnDropped(this::failDroppedQueries);
+    }
+
+    @Override
+    public void writeBytes(byte[] bytes, CommandPriority priority, int supersedeKey) {
+        this.engine.write(bytes, priority, supersedeKey);
     }
 
     @Override
-    public void writeBytes(byte[] bytes) {
-        Log.w("writeCommand", Command.bytesToStr(bytes));
-        Log.w("writeCommand", String.format("payload length: %d", bytes.length));
-        this.gattCallbacks.writeRxCharacteristic(bytes);
+    protected void writeFrame(Command command, CommandPriority priority, int supersedeKey) {
+        this.engine.write(command, priority, supersedeKey);
     }
 
     @Override
@@ -111,7 +131,7 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
     public boolean isFirmwareAtLeast(String version) {
         version = String.format("v%s.0b", version);
         final String gVersion = this.getDeviceInformation().getFirmwareVersion();
-        Log.w("isFirmwareAtLeast", String.format("glasses: [%s], argument: [%s] = %d", gVersion, version, gVersion.compareTo(version)));
+        SdkLog.d("isFirmwareAtLeast", "glasses: [%s], argument: [%s] = %d", gVersion, version, gVersion.compareTo(version));
         return gVersion.compareTo(version) >= 0;
     }
 
@@ -119,8 +139,8 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
     public int compareFirmwareVersion(String version) {
         version = String.format("v%s.0b", version);
         final String gVersion = this.getDeviceInformation().getFirmwareVersion();
-        Log.w("compareFirmwareVersion", String.format("glasses: [%s], argument: [%s] = %d", gVersion, version,
-                gVersion.compareTo(version)));
+        SdkLog.d("compareFirmwareVersion", "glasses: [%s], argument: [%s] = %d", gVersion, version,
+                gVersion.compareTo(version));
         return gVersion.compareTo(version);
     }
 
@@ -146,7 +166,8 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
 
     @Override
     public void subscribeToFlowControlNotifications(Consumer<FlowControlStatus> onEvent) {
-        this.gattCallbacks.subscribeToFlowControlNotifications(onEvent);
+        this.engine.subscribeToFlowControlNotifications(onEvent == null ? null
+                : status -> this.gattCallbacks.dispatch(() -> onEvent.accept(status)));
     }
 
     @Override
@@ -156,13 +177,99 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
 
     @Override
     public void flush() {
-        gattCallbacks.flushWrites();
+        this.engine.flush();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Void> flushAsync(long timeoutMs) {
+        return this.engine.flushAsync(timeoutMs);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Void> flushAsync(CommandPriority priority, long timeoutMs) {
+        return this.engine.flushAsync(priority, timeoutMs);
+    }
+
+    @Override
+    protected void onQueryRoundTrip(long roundTripNs) {
+        this.engine.onQueryRoundTrip(roundTripNs);
+    }
+
+    @Override
+    protected void onQueryTimeout() {
+        this.engine.onQueryTimeout();
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+        return this.engine.getMetrics();
+    }
+
+    @Override
+    public void subscribeToMetrics(long intervalMs, Consumer<ConnectionMetrics> onEvent) {
+        this.engine.subscribeToMetrics(intervalMs, onEvent);
+    }
+
+    @Override
+    public void setCallbackExecutor(Executor executor) {
+        this.gattCallbacks.setCallbackExecutor(executor);
+    }
+
+    @Override
+    public void setByteTracing(boolean enabled) {
+        this.gattCallbacks.setByteTracing(enabled);
+    }
+
+    @Override
+    public long getWriteRetryCount() {
+        return this.engine.getWriteRetryCount();
+    }
+
+    @Override
+    public void setFixedWriteDelay(int delayMs) {
+        this.engine.setFixedWriteDelay(delayMs);
+    }
+
+    @Override
+    public void setAdaptiveWriteDelay() {
+        this.engine.setAdaptiveWriteDelay();
+    }
+
+    @Override
+    public void setWriteWithoutResponse(boolean enabled) {
+        this.engine.setWriteWithoutResponse(enabled);
+    }
+
+    @Override
+    public void setCoalesceDisplayCommands(boolean enabled) {
+        this.engine.setCoalesceDisplayCommands(enabled);
+    }
+
+    @Override
+    public void setOutboundQueueLimits(int maxBytes, int maxCommands, QueueFullPolicy policy) {
+        this.engine.setOutboundQueueLimits(maxBytes, maxCommands, policy);
+    }
+
+    @Override
+    public QueueDepth getOutboundQueueDepth() {
+        return this.engine.getOutboundQueueDepth();
+    }
+
+    @Override
+    public void subscribeToOutboundQueueDepth(Consumer<QueueDepth> onEvent) {
+        this.engine.subscribeToOutboundQueueDepth(onEvent);
     }
 
     void callCallback(Command command) {
         this.delegateToCallback(command);
     }
 
+    void onDisconnected() {
+        this.failPendingQueries();
+    }
+
     @Override
     public int describeContents() {
         return 0;
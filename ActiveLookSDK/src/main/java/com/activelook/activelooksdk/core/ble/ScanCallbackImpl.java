@@ -17,11 +17,11 @@ package com.activelook.activelooksdk.core.ble;
 import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanResult;
 import android.bluetooth.le.ScanSettings;
-import android.util.Log;
 
 import androidx.core.util.Consumer;
 
 import com.activelook.activelooksdk.DiscoveredGlasses;
+import com.activelook.activelooksdk.core.SdkLog;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -60,9 +60,9 @@ class ScanCallbackImpl extends ScanCallback {
     public void onScanFailed(int errorCode) {
         super.onScanFailed(errorCode);
         if (errorCode == ScanCallback.SCAN_FAILED_ALREADY_STARTED) {
-            Log.d("BleSdk", "onScanFailed(SCAN_FAILED_ALREADY_STARTED)");
+            SdkLog.d("BleSdk", "onScanFailed(SCAN_FAILED_ALREADY_STARTED)");
         } else {
-            Log.d("BleSdk", "onScanFailed(OTHER)");
+            SdkLog.d("BleSdk", "onScanFailed(OTHER)");
         }
     }
 
@@ -14,15 +14,26 @@ limitations under the License.
 */
 package com.activelook.activelooksdk.core.debug;
 
+import android.os.Build;
 import android.os.Parcel;
-import android.util.Log;
 
+import androidx.annotation.RequiresApi;
 import androidx.core.util.Consumer;
 
 import com.activelook.activelooksdk.Glasses;
 import com.activelook.activelooksdk.core.AbstractGlasses;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.types.CommandPriority;
+import com.activelook.activelooksdk.types.ConnectionMetrics;
 import com.activelook.activelooksdk.types.DeviceInformation;
+import com.activelook.activelooksdk.types.Histogram;
 import com.activelook.activelooksdk.types.FlowControlStatus;
+import com.activelook.activelooksdk.types.LogLevel;
+import com.activelook.activelooksdk.types.QueueDepth;
+import com.activelook.activelooksdk.types.QueueFullPolicy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 class GlassesImpl extends AbstractGlasses implements Glasses {
 
@@ -41,6 +52,7 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
     private String name;
     private String address;
     private String manufacturer;
+    private volatile boolean traceBytes;
 
     GlassesImpl(DiscoveredGlassesImpl discoveredGlasses, Consumer<Glasses> onConnected) {
         super();
@@ -91,6 +103,7 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
 
     @Override
     public void disconnect() {
+        this.failPendingQueries();
     }
 
     @Override
@@ -118,15 +131,79 @@ class GlassesImpl extends AbstractGlasses implements Glasses {
     public void flush() {
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Void> flushAsync(long timeoutMs) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    @Override
+    public CompletableFuture<Void> flushAsync(CommandPriority priority, long timeoutMs) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+        final Histogram empty = new Histogram(new long[1]);
+        return new ConnectionMetrics(0, 0, 0, 0, 0, 0, 0, 0, empty, 0, 0, 0, 0, empty, 0);
+    }
+
+    @Override
+    public void subscribeToMetrics(long intervalMs, Consumer<ConnectionMetrics> onEvent) {
+    }
+
+    @Override
+    public void setByteTracing(boolean enabled) {
+        this.traceBytes = enabled;
+    }
+
+    @Override
+    public long getWriteRetryCount() {
+        return 0;
+    }
+
+    @Override
+    public void setFixedWriteDelay(int delayMs) {
+    }
+
+    @Override
+    public void setAdaptiveWriteDelay() {
+    }
+
+    @Override
+    public void setWriteWithoutResponse(boolean enabled) {
+    }
+
+    @Override
+    public void setCoalesceDisplayCommands(boolean enabled) {
+    }
+
+    @Override
+    public void setOutboundQueueLimits(int maxBytes, int maxCommands, QueueFullPolicy policy) {
+    }
+
+    @Override
+    public QueueDepth getOutboundQueueDepth() {
+        return new QueueDepth(0, 0, 0);
+    }
+
+    @Override
+    public void setCallbackExecutor(Executor executor) {
+    }
+
+    @Override
+    public void subscribeToOutboundQueueDepth(Consumer<QueueDepth> onEvent) {
+    }
+
     @Override
     public void writeBytes(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        String prefix = "[ ";
-        for (byte aByte : bytes) {
-            result.append(String.format("%s0x%02X", prefix, aByte));
-            prefix = ", ";
+        if (SdkLog.isLoggable(LogLevel.DEBUG) && bytes.length > 1) {
+            SdkLog.d("DebugGlasses", "writeCommand(0x%02X, %d bytes)", bytes[1] & 0xFF, bytes.length);
+        }
+        if (this.traceBytes) {
+            SdkLog.dump("DebugGlasses", "writeCommand", bytes);
         }
-        Log.w("DebugGlasses", String.format("writeCommand(%s ])", result.toString()));
     }
 
     @Override
@@ -15,13 +15,13 @@ limitations under the License.
 package com.activelook.activelooksdk.core.debug;
 
 import android.os.AsyncTask;
-import android.util.Log;
 
 import androidx.core.util.Consumer;
 
 import com.activelook.activelooksdk.DiscoveredGlasses;
 import com.activelook.activelooksdk.Glasses;
 import com.activelook.activelooksdk.Sdk;
+import com.activelook.activelooksdk.core.SdkLog;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -44,7 +44,7 @@ class SdkImpl implements Sdk {
                     //noinspection BusyWait
                     Thread.sleep(1000);
                 } catch (InterruptedException e) {
-                    Log.e("SCAN", "Sleep error", e);
+                    SdkLog.e("SCAN", "Sleep error", e);
                 }
             }
         });
@@ -0,0 +1,108 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credit window for bulk packets written without response.
+ * Each packet written without response consumes a credit. When no credit is left, the next packet is written
+ * with response and its acknowledgement restores the whole window. A flow control STOP drops the remaining
+ * credits and a CAN SEND restores them.
+ * Each overflow reported by the glasses halves the window, and the mode is turned off when the window is
+ * exhausted or when overflows come in bursts.
+ */
+final class BulkWriteCredits {
+
+    static final int DEFAULT_WINDOW = 8;
+    private static final int OVERFLOW_BURST = 3;
+    private static final long OVERFLOW_BURST_PERIOD_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private boolean enabled;
+    private int window;
+    private int credits;
+    private int overflows;
+    private long overflowPeriodStart;
+
+    BulkWriteCredits() {
+        super();
+        this.setEnabled(false);
+    }
+
+    synchronized void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        this.window = DEFAULT_WINDOW;
+        this.credits = enabled ? DEFAULT_WINDOW : 0;
+        this.overflows = 0;
+    }
+
+    synchronized boolean isEnabled() {
+        return this.enabled;
+    }
+
+    synchronized int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Try to consume a credit for a bulk packet.
+     *
+     * @return true if the packet can be written without response.
+     */
+    synchronized boolean tryAcquire() {
+        if (this.enabled && this.credits > 0) {
+            this.credits--;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void onAcknowledged() {
+        this.credits = this.enabled ? this.window : 0;
+    }
+
+    synchronized void onFlowControlStop() {
+        this.credits = 0;
+    }
+
+    synchronized void onFlowControlCanSend() {
+        this.onAcknowledged();
+    }
+
+    /**
+     * Record an overflow reported by the glasses.
+     *
+     * @param now The current time in nanoseconds.
+     * @return true if this overflow turned the write without response mode off.
+     */
+    synchronized boolean onOverflow(final long now) {
+        if (!this.enabled) {
+            return false;
+        }
+        if (this.overflows == 0 || now - this.overflowPeriodStart > OVERFLOW_BURST_PERIOD_NS) {
+            this.overflows = 0;
+            this.overflowPeriodStart = now;
+        }
+        this.overflows++;
+        this.window /= 2;
+        this.credits = 0;
+        if (this.window == 0 || this.overflows >= OVERFLOW_BURST) {
+            this.enabled = false;
+            return true;
+        }
+        return false;
+    }
+
+}
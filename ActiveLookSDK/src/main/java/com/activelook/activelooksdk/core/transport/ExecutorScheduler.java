@@ -0,0 +1,56 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler running the tasks on a single thread, on the system clock.
+ */
+public final class ExecutorScheduler implements Scheduler {
+
+    private final ScheduledExecutorService executorService;
+
+    public ExecutorScheduler() {
+        super();
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        this.executorService.execute(command);
+    }
+
+    @Override
+    public Task schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        final ScheduledFuture<?> future = this.executorService.schedule(command, delay, unit);
+        return () -> future.cancel(false);
+    }
+
+    @Override
+    public Task scheduleAtFixedRate(final Runnable command, final long period, final TimeUnit unit) {
+        final ScheduledFuture<?> future = this.executorService.scheduleAtFixedRate(command, period, period, unit);
+        return () -> future.cancel(false);
+    }
+
+}
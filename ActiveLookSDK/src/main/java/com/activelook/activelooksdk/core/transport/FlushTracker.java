@@ -0,0 +1,152 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Track the frames acknowledged by GATT to complete pending flushes.
+ * A flush waits for the frames enqueued in both queues before its registration. Since each queue sends its
+ * frames in order, a flush is complete once the number of frames of each queue that left in acknowledged
+ * packets reaches the number of frames enqueued at registration.
+ */
+final class FlushTracker {
+
+    interface Listener {
+
+        void onFlushed();
+
+        void onFailed(Exception e);
+
+    }
+
+    static final class Pending {
+
+        private final long interactiveTarget;
+        private final long bulkTarget;
+        private final Listener listener;
+
+        private Pending(final long interactiveTarget, final long bulkTarget, final Listener listener) {
+            this.interactiveTarget = interactiveTarget;
+            this.bulkTarget = bulkTarget;
+            this.listener = listener;
+        }
+
+    }
+
+    private final List<Pending> pending;
+    private long interactiveSent;
+    private long bulkSent;
+    private long interactiveAcknowledged;
+    private long bulkAcknowledged;
+
+    FlushTracker() {
+        super();
+        this.pending = new LinkedList<>();
+    }
+
+    /**
+     * Register a flush. The listener is called immediately if nothing is waiting for an acknowledgement.
+     *
+     * @param interactiveTarget The number of frames enqueued in the interactive queue.
+     * @param bulkTarget        The number of frames enqueued in the bulk queue.
+     * @param listener          The listener to call on completion or failure.
+     * @return The handle of the flush.
+     */
+    Pending register(final long interactiveTarget, final long bulkTarget, final Listener listener) {
+        final Pending flush = new Pending(interactiveTarget, bulkTarget, listener);
+        synchronized (this) {
+            if (!this.isFlushed(flush)) {
+                this.pending.add(flush);
+                return flush;
+            }
+        }
+        listener.onFlushed();
+        return flush;
+    }
+
+    /**
+     * Record a packet given to GATT.
+     *
+     * @param interactiveCompleted The number of frames that left the interactive queue.
+     * @param bulkCompleted        The number of frames that left the bulk queue.
+     */
+    synchronized void onPacketSent(final long interactiveCompleted, final long bulkCompleted) {
+        this.interactiveSent = interactiveCompleted;
+        this.bulkSent = bulkCompleted;
+    }
+
+    /**
+     * Record the acknowledgement of the last packet sent and complete the flushes it satisfies.
+     */
+    void onPacketAcknowledged() {
+        final List<Pending> flushed = new ArrayList<>();
+        synchronized (this) {
+            this.interactiveAcknowledged = this.interactiveSent;
+            this.bulkAcknowledged = this.bulkSent;
+            final Iterator<Pending> it = this.pending.iterator();
+            while (it.hasNext()) {
+                final Pending flush = it.next();
+                if (this.isFlushed(flush)) {
+                    it.remove();
+                    flushed.add(flush);
+                }
+            }
+        }
+        for (final Pending flush : flushed) {
+            flush.listener.onFlushed();
+        }
+    }
+
+    /**
+     * Fail a pending flush.
+     *
+     * @return false if the flush was already complete.
+     */
+    boolean fail(final Pending flush, final Exception e) {
+        synchronized (this) {
+            if (!this.pending.remove(flush)) {
+                return false;
+            }
+        }
+        flush.listener.onFailed(e);
+        return true;
+    }
+
+    /**
+     * Fail all pending flushes.
+     */
+    void failAll(final Exception e) {
+        final List<Pending> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(this.pending);
+            this.pending.clear();
+        }
+        for (final Pending flush : failed) {
+            flush.listener.onFailed(e);
+        }
+    }
+
+    /*
+    Helpers
+     */
+    private boolean isFlushed(final Pending flush) {
+        return this.interactiveAcknowledged >= flush.interactiveTarget && this.bulkAcknowledged >= flush.bulkTarget;
+    }
+
+}
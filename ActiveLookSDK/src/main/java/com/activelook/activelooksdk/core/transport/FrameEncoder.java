@@ -0,0 +1,38 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+/**
+ * A frame able to write itself into a buffer, so that it can be encoded straight into the outbound ring
+ * instead of being built in an intermediate array first.
+ */
+public interface FrameEncoder {
+
+    /**
+     * @return The number of bytes written by {@link #encode(byte[], int, int)}.
+     */
+    int getEncodedLength();
+
+    /**
+     * Write the frame. The byte i of the frame is written to {@code buffer[(position + i) & mask]}.
+     *
+     * @param buffer   The destination buffer.
+     * @param position The position of the first byte, not masked.
+     * @param mask     {@code buffer.length - 1} for a ring buffer whose length is a power of two, or -1 for a
+     *                 plain array large enough to hold the frame at the position.
+     */
+    void encode(byte[] buffer, int position, int mask);
+
+}
@@ -0,0 +1,193 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.core.SdkLog;
+
+/**
+ * Incremental parser of the frames notified on the TX characteristic.
+ * Notifications are appended to a growable ring buffer and complete frames are sliced out of it, so that a frame
+ * can be split across notifications and a notification can hold several frames. Each byte is only copied in and
+ * out once. Bytes that cannot start a valid frame are skipped to resynchronize on the next frame.
+ * A length above the largest frame of the protocol is taken as corrupt and skipped at once, instead of holding
+ * back the frames behind it. If such a frame is already complete and well formed, it is dropped whole and handed
+ * to a listener, so that its query can be failed.
+ */
+final class FrameReassembler {
+
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final byte FRAME_START = (byte) 0xFF;
+    private static final byte FRAME_END = (byte) 0xAA;
+    private static final int SHORT_HEADER_SIZE = 4;
+    private static final int LONG_HEADER_SIZE = 5;
+    private static final int LONG_FORMAT = 0x10;
+    private static final int QUERY_ID_MASK = 0x0F;
+    /*
+    Largest data of a frame sent by the glasses
+     */
+    static final int MAX_DATA_SIZE = 512;
+
+    private byte[] buffer;
+    private int head;
+    private int tail;
+    private long skippedBytes;
+    private long oversizedFrames;
+    private Consumer<byte[]> onOversized;
+
+    FrameReassembler() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    FrameReassembler(final int capacity) {
+        super();
+        this.buffer = new byte[Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1];
+    }
+
+    /**
+     * Set the consumer of the well formed frames dropped because they are longer than the protocol allows.
+     */
+    void setOnOversized(final Consumer<byte[]> onOversized) {
+        this.onOversized = onOversized;
+    }
+
+    /**
+     * Append the value of a notification.
+     *
+     * @param bytes The notified bytes.
+     */
+    void append(final byte[] bytes) {
+        final int used = this.tail - this.head;
+        if (used + bytes.length > this.buffer.length) {
+            this.grow(used + bytes.length);
+        }
+        final int start = this.tail & (this.buffer.length - 1);
+        final int first = Math.min(bytes.length, this.buffer.length - start);
+        System.arraycopy(bytes, 0, this.buffer, start, first);
+        System.arraycopy(bytes, first, this.buffer, 0, bytes.length - first);
+        this.tail += bytes.length;
+    }
+
+    /**
+     * Slice the next complete frame out of the buffer.
+     *
+     * @return The frame, or null if no complete frame is available yet.
+     */
+    byte[] nextFrame() {
+        while (this.tail != this.head) {
+            if (this.at(0) != FRAME_START) {
+                this.skip();
+                continue;
+            }
+            final int available = this.tail - this.head;
+            if (available < SHORT_HEADER_SIZE) {
+                return null;
+            }
+            final int format = this.at(2) & 0xFF;
+            final int headerSize = (format & LONG_FORMAT) == LONG_FORMAT ? LONG_HEADER_SIZE : SHORT_HEADER_SIZE;
+            if (available < headerSize) {
+                return null;
+            }
+            final int length = headerSize == LONG_HEADER_SIZE
+                    ? (this.at(3) & 0xFF) << 8 | this.at(4) & 0xFF
+                    : this.at(3) & 0xFF;
+            if (length < headerSize + (format & QUERY_ID_MASK) + 1) {
+                this.skip();
+                continue;
+            }
+            if (length > headerSize + (format & QUERY_ID_MASK) + MAX_DATA_SIZE + 1) {
+                if (available >= length && this.at(length - 1) == FRAME_END) {
+                    this.dropOversized(length);
+                } else {
+                    this.skip();
+                }
+                continue;
+            }
+            if (available < length) {
+                return null;
+            }
+            if (this.at(length - 1) != FRAME_END) {
+                this.skip();
+                continue;
+            }
+            return this.take(length);
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of bytes skipped to resynchronize on a frame start.
+     */
+    long getSkippedBytes() {
+        return this.skippedBytes;
+    }
+
+    /**
+     * @return The number of well formed frames dropped because they are too long.
+     */
+    long getOversizedFrames() {
+        return this.oversizedFrames;
+    }
+
+    /*
+    Helpers
+     */
+    private byte at(final int index) {
+        return this.buffer[(this.head + index) & (this.buffer.length - 1)];
+    }
+
+    private byte[] take(final int length) {
+        final byte[] frame = new byte[length];
+        final int start = this.head & (this.buffer.length - 1);
+        final int first = Math.min(length, this.buffer.length - start);
+        System.arraycopy(this.buffer, start, frame, 0, first);
+        System.arraycopy(this.buffer, 0, frame, first, length - first);
+        this.head += length;
+        return frame;
+    }
+
+    private void dropOversized(final int length) {
+        final byte[] frame = this.take(length);
+        this.oversizedFrames++;
+        SdkLog.w("onTXChanged", "Frame of %d bytes above the protocol maximum dropped", length);
+        final Consumer<byte[]> onEvent = this.onOversized;
+        if (onEvent != null) {
+            onEvent.accept(frame);
+        }
+    }
+
+    private void skip() {
+        this.head++;
+        this.skippedBytes++;
+    }
+
+    private void grow(final int required) {
+        int capacity = this.buffer.length;
+        while (required > capacity) {
+            capacity <<= 1;
+        }
+        final int used = this.tail - this.head;
+        final byte[] grown = new byte[capacity];
+        final int start = this.head & (this.buffer.length - 1);
+        final int first = Math.min(used, this.buffer.length - start);
+        System.arraycopy(this.buffer, start, grown, 0, first);
+        System.arraycopy(this.buffer, 0, grown, first, used - first);
+        this.buffer = grown;
+        this.head = 0;
+        this.tail = used;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.types.ConnectionMetrics;
+import com.activelook.activelooksdk.types.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the link health of a connection.
+ * Recording only updates atomic counters, snapshots are built on demand.
+ */
+final class LinkMetrics {
+
+    static final int HISTOGRAM_BUCKETS = 12;
+
+    private final AtomicLong bytesSent;
+    private final AtomicLong packetsSent;
+    private final AtomicLong bytesReceived;
+    private final AtomicLong packetsReceived;
+    private int peakQueueBytes;
+    private int peakQueueCommands;
+    private final AtomicLongArray writeLatency;
+    private long flowControlStops;
+    private long flowControlStoppedNs;
+    private long flowControlStoppedAt;
+    private boolean flowControlStopped;
+    private long flowControlForcedResumes;
+    private final AtomicLong writeRetries;
+    private final AtomicLongArray queryRoundTrip;
+    private final AtomicLong queryTimeouts;
+
+    LinkMetrics() {
+        super();
+        this.bytesSent = new AtomicLong();
+        this.packetsSent = new AtomicLong();
+        this.bytesReceived = new AtomicLong();
+        this.packetsReceived = new AtomicLong();
+        this.writeLatency = new AtomicLongArray(HISTOGRAM_BUCKETS);
+        this.writeRetries = new AtomicLong();
+        this.queryRoundTrip = new AtomicLongArray(HISTOGRAM_BUCKETS);
+        this.queryTimeouts = new AtomicLong();
+    }
+
+    void onPacketSent(final int length) {
+        this.bytesSent.addAndGet(length);
+        this.packetsSent.incrementAndGet();
+    }
+
+    void onPacketReceived(final int length) {
+        this.bytesReceived.addAndGet(length);
+        this.packetsReceived.incrementAndGet();
+    }
+
+    synchronized void onQueueDepth(final int bytes, final int commands) {
+        this.peakQueueBytes = Math.max(this.peakQueueBytes, bytes);
+        this.peakQueueCommands = Math.max(this.peakQueueCommands, commands);
+    }
+
+    void onWriteAcknowledged(final long latencyNs) {
+        record(this.writeLatency, latencyNs);
+    }
+
+    synchronized void onFlowControlStop(final long now) {
+        if (!this.flowControlStopped) {
+            this.flowControlStopped = true;
+            this.flowControlStoppedAt = now;
+            this.flowControlStops++;
+        }
+    }
+
+    synchronized void onFlowControlCanSend(final long now, final boolean forced) {
+        if (this.flowControlStopped) {
+            this.flowControlStopped = false;
+            this.flowControlStoppedNs += now - this.flowControlStoppedAt;
+            if (forced) {
+                this.flowControlForcedResumes++;
+            }
+        }
+    }
+
+    void onWriteRetry() {
+        this.writeRetries.incrementAndGet();
+    }
+
+    long getWriteRetries() {
+        return this.writeRetries.get();
+    }
+
+    void onQueryRoundTrip(final long roundTripNs) {
+        record(this.queryRoundTrip, roundTripNs);
+    }
+
+    void onQueryTimeout() {
+        this.queryTimeouts.incrementAndGet();
+    }
+
+    /**
+     * @param queueBytes    The current number of pending bytes.
+     * @param queueCommands The current number of pending commands.
+     * @param now           The current time in nanoseconds.
+     * @return A snapshot of the metrics.
+     */
+    ConnectionMetrics snapshot(final int queueBytes, final int queueCommands, final long now) {
+        final int peakBytes;
+        final int peakCommands;
+        final long stops;
+        final long stoppedNs;
+        final long forcedResumes;
+        synchronized (this) {
+            peakBytes = Math.max(this.peakQueueBytes, queueBytes);
+            peakCommands = Math.max(this.peakQueueCommands, queueCommands);
+            stops = this.flowControlStops;
+            stoppedNs = this.flowControlStoppedNs + (this.flowControlStopped ? now - this.flowControlStoppedAt : 0);
+            forcedResumes = this.flowControlForcedResumes;
+        }
+        return new ConnectionMetrics(
+                this.bytesSent.get(), this.packetsSent.get(),
+                this.bytesReceived.get(), this.packetsReceived.get(),
+                queueBytes, queueCommands,
+                peakBytes, peakCommands,
+                histogram(this.writeLatency),
+                stops, TimeUnit.NANOSECONDS.toMillis(stoppedNs),
+                forcedResumes,
+                this.writeRetries.get(),
+                histogram(this.queryRoundTrip),
+                this.queryTimeouts.get());
+    }
+
+    /*
+    Helpers
+     */
+    static int bucket(final long latencyNs) {
+        final long ms = TimeUnit.NANOSECONDS.toMillis(latencyNs);
+        return Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+    }
+
+    private static void record(final AtomicLongArray histogram, final long latencyNs) {
+        histogram.incrementAndGet(bucket(Math.max(0, latencyNs)));
+    }
+
+    private static Histogram histogram(final AtomicLongArray histogram) {
+        final long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return new Histogram(counts);
+    }
+
+}
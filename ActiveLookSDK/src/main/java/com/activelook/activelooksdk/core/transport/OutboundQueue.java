@@ -0,0 +1,555 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.types.QueueFullPolicy;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound byte queue of the RX characteristic.
+ * Frames are copied or encoded once into a preallocated ring buffer by any number of producers, and packets are
+ * sliced out of it by a single consumer. The ring only grows when a frame does not fit anymore.
+ * The frames boundaries are kept in a second ring, so that a scheduler can switch queues between two frames.
+ * A frame can be enqueued with a key: when coalescing is enabled, a pending frame with the same key that has
+ * not started to be sent is then superseded. It is overwritten in place when it is the last frame and both frames
+ * have the same length, otherwise it is skipped and the new frame is appended, so that frames are never reordered.
+ * The number of pending bytes and frames can be bounded, the policy then decides what happens to a frame that
+ * does not fit. A blocked producer waits for a bounded time, and is released when the queue is closed.
+ * The frames rejected or dropped are handed to a listener, so that their queries can be failed.
+ */
+final class OutboundQueue {
+
+    static final int DEFAULT_CAPACITY = 64 * 1024;
+    static final int NO_KEY = -1;
+    static final long DEFAULT_BLOCK_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_FRAME_CAPACITY = 256;
+    private static final int SUPERSEDED = -2;
+
+    private final Lock lock;
+    private final Condition notFull;
+    private byte[] buffer;
+    private int head;
+    private int tail;
+    private int[] frameLengths;
+    private int[] frameStarts;
+    private int[] frameKeys;
+    private int frameHead;
+    private int frameTail;
+    private int headFrameOffset;
+    private int liveFrames;
+    private int supersededBytes;
+    private boolean coalescing;
+    private int maxBytes;
+    private int maxFrames;
+    private QueueFullPolicy policy;
+    private long droppedFrames;
+    private long enqueuedFrames;
+    private long completedFrames;
+    private long blockTimeoutNs;
+    private boolean closed;
+    private byte[] dropped;
+    private volatile Consumer<byte[]> onDropped;
+
+    OutboundQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    OutboundQueue(final int capacity) {
+        super();
+        this.lock = new ReentrantLock();
+        this.notFull = this.lock.newCondition();
+        this.buffer = new byte[Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1];
+        this.frameLengths = new int[DEFAULT_FRAME_CAPACITY];
+        this.frameStarts = new int[DEFAULT_FRAME_CAPACITY];
+        this.frameKeys = new int[DEFAULT_FRAME_CAPACITY];
+        this.maxBytes = Integer.MAX_VALUE;
+        this.maxFrames = Integer.MAX_VALUE;
+        this.policy = QueueFullPolicy.BLOCK;
+        this.blockTimeoutNs = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BLOCK_TIMEOUT_MS);
+    }
+
+    void setCoalescing(final boolean coalescing) {
+        this.lock.lock();
+        try {
+            this.coalescing = coalescing;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Bound the pending bytes and frames. A frame is always accepted by an empty queue, whatever its length.
+     *
+     * @param maxBytes  The maximum number of pending bytes.
+     * @param maxFrames The maximum number of pending frames.
+     * @param policy    What to do with a frame that does not fit.
+     */
+    void setLimits(final int maxBytes, final int maxFrames, final QueueFullPolicy policy) {
+        if (maxBytes <= 0 || maxFrames <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid queue limits: %d bytes, %d frames", maxBytes, maxFrames));
+        }
+        this.lock.lock();
+        try {
+            this.maxBytes = maxBytes;
+            this.maxFrames = maxFrames;
+            this.policy = policy;
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Bound the time a producer waits for a frame to fit under the BLOCK policy. The frame is rejected after.
+     *
+     * @param timeoutMs The maximum waiting time.
+     */
+    void setBlockTimeout(final long timeoutMs) {
+        this.lock.lock();
+        try {
+            this.blockTimeoutNs = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Set the consumer of the frames rejected or dropped because the queue is full or closed.
+     * It is called by the producer, outside of the queue lock. Dropped frames are concatenated.
+     */
+    void setOnDropped(final Consumer<byte[]> onDropped) {
+        this.onDropped = onDropped;
+    }
+
+    /**
+     * Reject the next frames and release the blocked producers, once the link is closed.
+     */
+    void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Enqueue a frame.
+     *
+     * @param bytes  The source buffer.
+     * @param offset The offset of the frame in the source buffer.
+     * @param length The length of the frame.
+     * @return false if the frame was rejected because the queue is full.
+     */
+    boolean offer(final byte[] bytes, final int offset, final int length) {
+        return this.offer(bytes, offset, length, NO_KEY);
+    }
+
+    /**
+     * Enqueue a frame, superseding the pending frame with the same key if any and if allowed.
+     * Depending on the policy, this blocks until the frame fits, drops the oldest pending frames or rejects the
+     * frame when the queue is full. A frame is always rejected by a closed queue.
+     *
+     * @param bytes  The source buffer.
+     * @param offset The offset of the frame in the source buffer.
+     * @param length The length of the frame.
+     * @param key    The key of the frame, or a negative value if the frame cannot supersede another one.
+     * @return false if the frame was rejected because the queue is full.
+     */
+    boolean offer(final byte[] bytes, final int offset, final int length, final int key) {
+        return this.enqueue(bytes, offset, null, length, key);
+    }
+
+    /**
+     * Enqueue a frame encoded in place into the ring, superseding the pending frame with the same key if any and
+     * if allowed. The queue full policy is applied as for a copied frame.
+     *
+     * @param frame The frame to encode.
+     * @param key   The key of the frame, or a negative value if the frame cannot supersede another one.
+     * @return false if the frame was rejected because the queue is full.
+     */
+    boolean offer(final FrameEncoder frame, final int key) {
+        return this.enqueue(null, 0, frame, frame.getEncodedLength(), key);
+    }
+
+    /*
+    The frame is either copied from bytes or encoded by frame
+     */
+    private boolean enqueue(final byte[] bytes, final int offset, final FrameEncoder frame, final int length,
+            final int key) {
+        final boolean accepted;
+        final byte[] rejected;
+        this.lock.lock();
+        try {
+            accepted = this.insert(bytes, offset, frame, length, key);
+            rejected = this.dropped;
+            this.dropped = null;
+        } finally {
+            this.lock.unlock();
+        }
+        final Consumer<byte[]> onEvent = this.onDropped;
+        if (rejected != null && onEvent != null) {
+            onEvent.accept(rejected);
+        }
+        return accepted;
+    }
+
+    /*
+    Called with the lock held
+     */
+    private boolean insert(final byte[] bytes, final int offset, final FrameEncoder frame, final int length,
+            final int key) {
+        if (this.closed) {
+            return this.reject(bytes, offset, frame, length);
+        }
+        final boolean supersede = this.coalescing
+                || this.policy == QueueFullPolicy.COALESCE && !this.fits(length);
+        if (key >= 0 && supersede && this.supersede(bytes, offset, frame, length, key)) {
+            return true;
+        }
+        if (!this.fits(length)) {
+            if (this.policy == QueueFullPolicy.BLOCK) {
+                if (!this.awaitFits(length)) {
+                    return this.reject(bytes, offset, frame, length);
+                }
+            } else if (this.policy == QueueFullPolicy.DROP_OLDEST) {
+                this.dropOldest(length);
+            } else {
+                return this.reject(bytes, offset, frame, length);
+            }
+        }
+        this.ensureCapacity(length);
+        if (this.frameTail - this.frameHead == this.frameLengths.length) {
+            this.growFrames();
+        }
+        final int slot = this.frameTail & (this.frameLengths.length - 1);
+        this.frameLengths[slot] = length;
+        this.frameStarts[slot] = this.tail;
+        this.frameKeys[slot] = key < 0 ? NO_KEY : key;
+        this.frameTail++;
+        this.liveFrames++;
+        this.enqueuedFrames++;
+        this.writeIn(bytes, offset, frame, length, this.tail);
+        this.tail += length;
+        return true;
+    }
+
+    /**
+     * Move the next pending bytes into a packet. Frames are split across packets when needed.
+     *
+     * @param packet    The destination packet.
+     * @param offset    The offset in the destination packet.
+     * @param maxLength The maximum number of bytes to move.
+     * @return The number of bytes moved.
+     */
+    int poll(final byte[] packet, final int offset, final int maxLength) {
+        this.lock.lock();
+        try {
+            final int mask = this.buffer.length - 1;
+            final int frameMask = this.frameLengths.length - 1;
+            final int frames = this.liveFrames;
+            int read = 0;
+            while (this.frameHead != this.frameTail) {
+                final int frame = this.frameHead & frameMask;
+                if (this.frameKeys[frame] == SUPERSEDED) {
+                    this.head += this.frameLengths[frame];
+                    this.supersededBytes -= this.frameLengths[frame];
+                    this.frameHead++;
+                    this.completedFrames++;
+                    continue;
+                }
+                if (read == maxLength) {
+                    break;
+                }
+                final int length = Math.min(this.frameLengths[frame] - this.headFrameOffset, maxLength - read);
+                final int start = this.head & mask;
+                final int first = Math.min(length, this.buffer.length - start);
+                System.arraycopy(this.buffer, start, packet, offset + read, first);
+                System.arraycopy(this.buffer, 0, packet, offset + read + first, length - first);
+                this.head += length;
+                read += length;
+                this.headFrameOffset += length;
+                if (this.headFrameOffset == this.frameLengths[frame]) {
+                    this.frameHead++;
+                    this.headFrameOffset = 0;
+                    this.liveFrames--;
+                    this.completedFrames++;
+                }
+            }
+            if (this.liveFrames != frames) {
+                this.notFull.signalAll();
+            }
+            return read;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of bytes left in the frame being sent, or 0 if no frame has been partially sent.
+     */
+    int getCurrentFrameRemaining() {
+        this.lock.lock();
+        try {
+            if (this.headFrameOffset == 0) {
+                return 0;
+            }
+            return this.frameLengths[this.frameHead & (this.frameLengths.length - 1)] - this.headFrameOffset;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        this.lock.lock();
+        try {
+            return this.liveFrames == 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of pending bytes.
+     */
+    int size() {
+        this.lock.lock();
+        try {
+            return this.tail - this.head - this.supersededBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of pending frames, including the frame being sent.
+     */
+    int getFrameCount() {
+        this.lock.lock();
+        try {
+            return this.liveFrames;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of frames rejected or dropped because the queue was full.
+     */
+    long getDroppedFrames() {
+        this.lock.lock();
+        try {
+            return this.droppedFrames;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of frames enqueued since the creation of the queue.
+     */
+    long getEnqueuedFrames() {
+        this.lock.lock();
+        try {
+            return this.enqueuedFrames;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of frames that have been entirely polled or skipped since the creation of the queue.
+     */
+    long getCompletedFrames() {
+        this.lock.lock();
+        try {
+            return this.completedFrames;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /*
+    Helpers
+     */
+    private boolean fits(final int length) {
+        return this.liveFrames == 0
+                || this.liveFrames < this.maxFrames && this.tail - this.head - this.supersededBytes + length <= this.maxBytes;
+    }
+
+    /*
+    Wait until the frame fits, for the block timeout at most.
+    Return false if the frame still does not fit, or if the queue has been closed meanwhile.
+     */
+    private boolean awaitFits(final int length) {
+        long remaining = this.blockTimeoutNs;
+        try {
+            while (!this.fits(length) && !this.closed) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = this.notFull.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !this.closed;
+    }
+
+    private boolean reject(final byte[] bytes, final int offset, final FrameEncoder frame, final int length) {
+        this.droppedFrames++;
+        if (this.onDropped != null) {
+            final byte[] copy = new byte[length];
+            if (frame != null) {
+                frame.encode(copy, 0, -1);
+            } else {
+                System.arraycopy(bytes, offset, copy, 0, length);
+            }
+            this.dropped = copy;
+        }
+        return false;
+    }
+
+    /*
+    Supersede the pending frame with the given key, if any.
+    Return true if the new frame has been copied in place, which is only done for the last frame: a frame enqueued
+    in between must still be sent before the new one.
+     */
+    private boolean supersede(final byte[] bytes, final int offset, final FrameEncoder frame, final int length,
+            final int key) {
+        final int previous = this.findPending(key);
+        if (previous == -1) {
+            return false;
+        }
+        final int pending = previous & (this.frameLengths.length - 1);
+        if (previous == this.frameTail - 1 && this.frameLengths[pending] == length) {
+            this.writeIn(bytes, offset, frame, length, this.frameStarts[pending]);
+            return true;
+        }
+        this.skip(pending);
+        return false;
+    }
+
+    /*
+    Skip the oldest frames that have not started to be sent until the given length fits.
+     */
+    private void dropOldest(final int length) {
+        final int mask = this.frameLengths.length - 1;
+        int i = this.headFrameOffset == 0 ? this.frameHead : this.frameHead + 1;
+        for (; i != this.frameTail && !this.fits(length); i++) {
+            if (this.frameKeys[i & mask] != SUPERSEDED) {
+                if (this.onDropped != null) {
+                    this.keepDropped(i & mask);
+                }
+                this.skip(i & mask);
+                this.droppedFrames++;
+            }
+        }
+    }
+
+    /*
+    Append a pending frame to the dropped bytes
+     */
+    private void keepDropped(final int frame) {
+        final int length = this.frameLengths[frame];
+        final int from = this.dropped == null ? 0 : this.dropped.length;
+        this.dropped = this.dropped == null ? new byte[length] : Arrays.copyOf(this.dropped, from + length);
+        final int start = this.frameStarts[frame] & (this.buffer.length - 1);
+        final int first = Math.min(length, this.buffer.length - start);
+        System.arraycopy(this.buffer, start, this.dropped, from, first);
+        System.arraycopy(this.buffer, 0, this.dropped, from + first, length - first);
+    }
+
+    private void skip(final int frame) {
+        this.frameKeys[frame] = SUPERSEDED;
+        this.supersededBytes += this.frameLengths[frame];
+        this.liveFrames--;
+    }
+
+    private int findPending(final int key) {
+        final int mask = this.frameLengths.length - 1;
+        final int first = this.headFrameOffset == 0 ? this.frameHead : this.frameHead + 1;
+        for (int i = this.frameTail - 1; i - first >= 0; i--) {
+            if (this.frameKeys[i & mask] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeIn(final byte[] bytes, final int offset, final FrameEncoder frame, final int length,
+            final int position) {
+        if (frame != null) {
+            frame.encode(this.buffer, position, this.buffer.length - 1);
+            return;
+        }
+        final int start = position & (this.buffer.length - 1);
+        final int first = Math.min(length, this.buffer.length - start);
+        System.arraycopy(bytes, offset, this.buffer, start, first);
+        System.arraycopy(bytes, offset + first, this.buffer, 0, length - first);
+    }
+
+    private void ensureCapacity(final int length) {
+        final int used = this.tail - this.head;
+        if (used + length <= this.buffer.length) {
+            return;
+        }
+        int capacity = this.buffer.length;
+        while (used + length > capacity) {
+            capacity <<= 1;
+        }
+        final byte[] grown = new byte[capacity];
+        final int mask = this.buffer.length - 1;
+        final int start = this.head & mask;
+        final int first = Math.min(used, this.buffer.length - start);
+        System.arraycopy(this.buffer, start, grown, 0, first);
+        System.arraycopy(this.buffer, 0, grown, first, used - first);
+        final int frameMask = this.frameLengths.length - 1;
+        for (int i = this.frameHead; i != this.frameTail; i++) {
+            this.frameStarts[i & frameMask] -= this.head;
+        }
+        this.buffer = grown;
+        this.head = 0;
+        this.tail = used;
+    }
+
+    private void growFrames() {
+        final int count = this.frameTail - this.frameHead;
+        final int mask = this.frameLengths.length - 1;
+        final int[] lengths = new int[this.frameLengths.length << 1];
+        final int[] starts = new int[this.frameLengths.length << 1];
+        final int[] keys = new int[this.frameLengths.length << 1];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = this.frameLengths[(this.frameHead + i) & mask];
+            starts[i] = this.frameStarts[(this.frameHead + i) & mask];
+            keys[i] = this.frameKeys[(this.frameHead + i) & mask];
+        }
+        this.frameLengths = lengths;
+        this.frameStarts = starts;
+        this.frameKeys = keys;
+        this.frameHead = 0;
+        this.frameTail = count;
+    }
+
+}
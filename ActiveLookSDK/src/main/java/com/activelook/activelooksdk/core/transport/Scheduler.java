@@ -0,0 +1,42 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock and task scheduler of a transport engine.
+ * Every delayed action of the engine goes through the scheduler, so that the engine can run on a virtual clock.
+ */
+public interface Scheduler {
+
+    interface Task {
+
+        void cancel();
+
+    }
+
+    /**
+     * @return The current time in nanoseconds, only meaningful relatively to another value of the same scheduler.
+     */
+    long nanoTime();
+
+    void execute(Runnable command);
+
+    Task schedule(Runnable command, long delay, TimeUnit unit);
+
+    Task scheduleAtFixedRate(Runnable command, long period, TimeUnit unit);
+
+}
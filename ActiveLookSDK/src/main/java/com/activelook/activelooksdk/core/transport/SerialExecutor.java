@@ -0,0 +1,88 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.core.SdkLog;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor running its tasks one at a time and in order, on a delegate executor that may be shared.
+ * The tasks are drained by a single delegate task at a time, which yields after a bounded number of tasks so that
+ * the other users of a shared delegate are not starved. A task that throws is logged and the next ones still run.
+ */
+public final class SerialExecutor implements Executor {
+
+    static final int DRAIN_BATCH = 64;
+
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+    private final Runnable drain;
+    private volatile Executor delegate;
+
+    public SerialExecutor(final Executor delegate) {
+        super();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean(false);
+        this.drain = this::drain;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Run the next tasks on another delegate. A drain already running on the previous one completes first.
+     *
+     * @param delegate The new delegate.
+     */
+    public void setDelegate(final Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        this.tasks.offer(task);
+        this.schedule();
+    }
+
+    /*
+    Helpers
+     */
+    private void schedule() {
+        if (!this.tasks.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+            try {
+                this.delegate.execute(this.drain);
+            } catch (RuntimeException e) {
+                this.scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        for (int count = 0; count < DRAIN_BATCH && (task = this.tasks.poll()) != null; count++) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                SdkLog.e("SerialExecutor", "Callback failed", e);
+            }
+        }
+        this.scheduled.set(false);
+        this.schedule();
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+/**
+ * Link to the glasses used by the transport engine.
+ * A provider writes the packets built by the engine and reports the link events to its listener. The engine
+ * handles queueing, packing, pacing, flow control and frame reassembly, so a provider only moves bytes.
+ */
+public interface Transport {
+
+    /**
+     * Events of the link, reported by the provider to the engine.
+     */
+    interface Listener {
+
+        /**
+         * The maximum transmission unit of the link changed.
+         *
+         * @param mtu The new MTU, including the 3 bytes of the ATT header.
+         */
+        void onMtuChanged(int mtu);
+
+        /**
+         * The last packet written has been acknowledged, or handed to the controller for a write without response.
+         */
+        void onWriteComplete();
+
+        /**
+         * Bytes have been received from the glasses. They may hold a part of a frame or several frames.
+         *
+         * @param bytes The received bytes.
+         */
+        void onReceived(byte[] bytes);
+
+        /**
+         * The glasses sent a flow control state.
+         *
+         * @param state The raw flow control state.
+         */
+        void onFlowControl(byte state);
+
+    }
+
+    /**
+     * Write a packet. The packet buffer may be reused by the engine once the write is complete.
+     *
+     * @param packet          The packet, at most MTU - 3 bytes long.
+     * @param withoutResponse Write without waiting for an acknowledgement of the glasses.
+     * @return false if the link is busy and the write must be retried later.
+     */
+    boolean write(byte[] packet, boolean withoutResponse);
+
+}
@@ -0,0 +1,528 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.exceptions.GlassesDisconnectedException;
+import com.activelook.activelooksdk.types.CommandPriority;
+import com.activelook.activelooksdk.types.ConnectionMetrics;
+import com.activelook.activelooksdk.types.FlowControlStatus;
+import com.activelook.activelooksdk.types.LogLevel;
+import com.activelook.activelooksdk.types.QueueDepth;
+import com.activelook.activelooksdk.types.QueueFullPolicy;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transport agnostic engine between the protocol layer and a transport provider.
+ * Commands are queued by priority, packed into packets of the link MTU, paced and written through the transport
+ * while honoring the glasses flow control. Received bytes are reassembled into frames for the protocol layer.
+ * The engine does not depend on Android, all its timings go through its scheduler.
+ */
+public final class TransportEngine implements Transport.Listener {
+
+    public static final int DEFAULT_MTU = 23;
+    private static final int ATT_HEADER_SIZE = 3;
+    private static final long WRITE_RETRY_INITIAL_DELAY_MS = 2;
+    private static final long WRITE_RETRY_MAX_DELAY_MS = 256;
+    private static final long WRITE_RETRY_TIMEOUT_MS = 10000;
+    private static final long FLOW_CONTROL_REPAIR_DELAY_MS = 2000;
+
+    private final Transport transport;
+    private final Scheduler scheduler;
+    private final OutboundQueue interactiveQueue;
+    private final OutboundQueue bulkQueue;
+    private final AtomicBoolean flowControlCanSend;
+    private final AtomicBoolean isWritingCommand;
+    private final FrameReassembler rxFrames;
+    private final WritePacing writePacing;
+    private final BulkWriteCredits bulkCredits;
+    private final FlushTracker flushTracker;
+    private final LinkMetrics metrics;
+    private final Lock flushLock;
+    private final Condition writeQueueEmpty;
+    private volatile int mtu;
+    private Consumer<byte[]> onFrame;
+    private Consumer<FlowControlStatus> onFlowControlEvent;
+    private volatile Consumer<QueueDepth> onQueueDepthEvent;
+    private volatile Runnable onWriteFailed;
+    private Scheduler.Task repairFlowControl;
+    private Scheduler.Task metricsReport;
+    private long writeStartedAt;
+    private volatile boolean writingWithoutResponse;
+    private byte[] packetBuffer;
+    private volatile boolean traceBytes;
+    private volatile boolean closed;
+
+    public TransportEngine(final Transport transport, final Scheduler scheduler) {
+        super();
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.interactiveQueue = new OutboundQueue();
+        this.bulkQueue = new OutboundQueue();
+        this.flowControlCanSend = new AtomicBoolean(true);
+        this.isWritingCommand = new AtomicBoolean(false);
+        this.rxFrames = new FrameReassembler();
+        this.writePacing = new WritePacing();
+        this.bulkCredits = new BulkWriteCredits();
+        this.flushTracker = new FlushTracker();
+        this.metrics = new LinkMetrics();
+        this.flushLock = new ReentrantLock();
+        this.writeQueueEmpty = this.flushLock.newCondition();
+        this.mtu = DEFAULT_MTU;
+        this.onFrame = null;
+        this.onFlowControlEvent = null;
+        this.repairFlowControl = null;
+        this.metricsReport = null;
+    }
+
+    /*
+    Transport events
+     */
+
+    @Override
+    public void onMtuChanged(final int mtu) {
+        this.mtu = mtu;
+    }
+
+    @Override
+    public void onWriteComplete() {
+        final long delay;
+        if (this.writingWithoutResponse) {
+            delay = this.writePacing.getDelayUs();
+        } else {
+            final long latency = this.scheduler.nanoTime() - this.writeStartedAt;
+            delay = this.writePacing.onWriteAcknowledged(latency);
+            this.metrics.onWriteAcknowledged(latency);
+            this.bulkCredits.onAcknowledged();
+        }
+        this.flushTracker.onPacketAcknowledged();
+        this.scheduler.schedule(() -> {
+            this.isWritingCommand.set(false);
+            this.unstack();
+        }, delay, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void onReceived(final byte[] bytes) {
+        this.metrics.onPacketReceived(bytes.length);
+        if (this.traceBytes) {
+            SdkLog.dump("onTXChanged", "notified tx:", bytes);
+        }
+        this.rxFrames.append(bytes);
+        byte[] frame;
+        while ((frame = this.rxFrames.nextFrame()) != null) {
+            final Consumer<byte[]> onFrame = this.onFrame;
+            if (onFrame != null) {
+                onFrame.accept(frame);
+            }
+        }
+    }
+
+    @Override
+    public void onFlowControl(final byte state) {
+        if (state == (byte) 0x01) {
+            this.cancelRepairFlowControl();
+            SdkLog.d("FLOW CONTROL", "Glasses flow control CAN SEND");
+            this.resume(false);
+        } else if (state == (byte) 0x02) {
+            SdkLog.d("FLOW CONTROL", "Glasses flow control STOP SEND");
+            this.flowControlCanSend.set(false);
+            this.writePacing.onFlowControlStop();
+            this.bulkCredits.onFlowControlStop();
+            this.metrics.onFlowControlStop(this.scheduler.nanoTime());
+            this.cancelRepairFlowControl();
+            this.repairFlowControl = this.scheduler.schedule(() -> {
+                this.repairFlowControl = null;
+                SdkLog.w("FLOW CONTROL", "Glasses flow control FORCED CAN SEND");
+                this.resume(true);
+            }, FLOW_CONTROL_REPAIR_DELAY_MS, TimeUnit.MILLISECONDS);
+        } else {
+            final FlowControlStatus status;
+            if (state == (byte) 0x03) {
+                status = FlowControlStatus.CMD_ERROR;
+            } else if (state == (byte) 0x04) {
+                status = FlowControlStatus.OVERFLOW;
+            } else if (state == (byte) 0x06) {
+                status = FlowControlStatus.MISSING_CONFIG_ID;
+            } else { // if (state == (byte) 0x05) {
+                status = FlowControlStatus.RESERVED;
+            }
+            if (status == FlowControlStatus.OVERFLOW && this.bulkCredits.onOverflow(this.scheduler.nanoTime())) {
+                SdkLog.w("FLOW CONTROL", "Too many overflows, write without response disabled");
+            }
+            final Consumer<FlowControlStatus> onEvent = this.onFlowControlEvent;
+            if (onEvent != null) {
+                onEvent.accept(status);
+            }
+        }
+    }
+
+    /*
+    Protocol side
+     */
+
+    /**
+     * Set the consumer of the complete frames received from the glasses.
+     */
+    public void setOnFrame(final Consumer<byte[]> onFrame) {
+        this.onFrame = onFrame;
+    }
+
+    /**
+     * Set the consumer of the frames rejected or dropped by a full or closed outbound queue, and of the responses
+     * dropped because they are longer than the protocol allows. Several frames can be handed at once, concatenated.
+     */
+    public void setOnDropped(final Consumer<byte[]> onDropped) {
+        this.interactiveQueue.setOnDropped(onDropped);
+        this.bulkQueue.setOnDropped(onDropped);
+        this.rxFrames.setOnOversized(onDropped);
+    }
+
+    /**
+     * Set the action to run when the transport kept refusing a packet for 10 seconds. The engine is closed first,
+     * the link should then be torn down.
+     */
+    public void setOnWriteFailed(final Runnable onWriteFailed) {
+        this.onWriteFailed = onWriteFailed;
+    }
+
+    public void subscribeToFlowControlNotifications(final Consumer<FlowControlStatus> onEvent) {
+        this.onFlowControlEvent = onEvent;
+    }
+
+    public void write(final byte[] bytes, final CommandPriority priority, final int supersedeKey) {
+        if (this.traceBytes) {
+            SdkLog.dump("writeCommand", priority.name(), bytes);
+        }
+        final OutboundQueue queue = priority == CommandPriority.BULK ? this.bulkQueue : this.interactiveQueue;
+        this.onOffered(queue.offer(bytes, 0, bytes.length, supersedeKey), priority, bytes.length);
+    }
+
+    /**
+     * Write a frame that encodes itself straight into the outbound queue, without intermediate array.
+     *
+     * @param frame        The frame to write.
+     * @param priority     The queue of the frame.
+     * @param supersedeKey The key of the frame, or a negative value if it cannot supersede a pending frame.
+     */
+    public void write(final FrameEncoder frame, final CommandPriority priority, final int supersedeKey) {
+        if (this.traceBytes) {
+            final byte[] bytes = new byte[frame.getEncodedLength()];
+            frame.encode(bytes, 0, -1);
+            SdkLog.dump("writeCommand", priority.name(), bytes);
+        }
+        final OutboundQueue queue = priority == CommandPriority.BULK ? this.bulkQueue : this.interactiveQueue;
+        this.onOffered(queue.offer(frame, supersedeKey), priority, frame.getEncodedLength());
+    }
+
+    /* Waint until write queue is empty; timeout 5 seconds */
+    public void flush() {
+        this.flushLock.lock();
+        try {
+            while (this.hasPendingWrites() || this.isWritingCommand.get()) {
+                boolean timedOut = !this.writeQueueEmpty.await(5, TimeUnit.SECONDS);
+                if (timedOut) {
+                    SdkLog.e("glassTest", "Timed out when waiting for queue flush");
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /* Complete when every command enqueued before the call has been acknowledged */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public CompletableFuture<Void> flushAsync(final long timeoutMs) {
+        return this.flushAsync(this.interactiveQueue.getEnqueuedFrames(), this.bulkQueue.getEnqueuedFrames(),
+                timeoutMs);
+    }
+
+    /* Complete when every command enqueued in the queue of the priority before the call has been acknowledged */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public CompletableFuture<Void> flushAsync(final CommandPriority priority, final long timeoutMs) {
+        if (priority == CommandPriority.BULK) {
+            return this.flushAsync(0, this.bulkQueue.getEnqueuedFrames(), timeoutMs);
+        }
+        return this.flushAsync(this.interactiveQueue.getEnqueuedFrames(), 0, timeoutMs);
+    }
+
+    public long getWriteRetryCount() {
+        return this.metrics.getWriteRetries();
+    }
+
+    public ConnectionMetrics getMetrics() {
+        return this.metrics.snapshot(
+                this.interactiveQueue.size() + this.bulkQueue.size(),
+                this.interactiveQueue.getFrameCount() + this.bulkQueue.getFrameCount(),
+                this.scheduler.nanoTime());
+    }
+
+    public synchronized void subscribeToMetrics(final long intervalMs, final Consumer<ConnectionMetrics> onEvent) {
+        if (this.metricsReport != null) {
+            this.metricsReport.cancel();
+            this.metricsReport = null;
+        }
+        if (onEvent != null) {
+            this.metricsReport = this.scheduler.scheduleAtFixedRate(
+                    () -> onEvent.accept(this.getMetrics()), intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void onQueryRoundTrip(final long roundTripNs) {
+        this.metrics.onQueryRoundTrip(roundTripNs);
+    }
+
+    public void onQueryTimeout() {
+        this.metrics.onQueryTimeout();
+    }
+
+    public void setFixedWriteDelay(final int delayMs) {
+        this.writePacing.setFixedDelay(delayMs);
+    }
+
+    public void setAdaptiveWriteDelay() {
+        this.writePacing.setAdaptive();
+    }
+
+    public void setWriteWithoutResponse(final boolean enabled) {
+        this.bulkCredits.setEnabled(enabled);
+    }
+
+    public void setCoalesceDisplayCommands(final boolean enabled) {
+        this.interactiveQueue.setCoalescing(enabled);
+        this.bulkQueue.setCoalescing(enabled);
+    }
+
+    public void setOutboundQueueLimits(final int maxBytes, final int maxCommands, final QueueFullPolicy policy) {
+        this.interactiveQueue.setLimits(maxBytes, maxCommands, policy);
+        this.bulkQueue.setLimits(maxBytes, maxCommands, policy);
+    }
+
+    public QueueDepth getOutboundQueueDepth() {
+        return new QueueDepth(
+                this.interactiveQueue.size() + this.bulkQueue.size(),
+                this.interactiveQueue.getFrameCount() + this.bulkQueue.getFrameCount(),
+                this.interactiveQueue.getDroppedFrames() + this.bulkQueue.getDroppedFrames());
+    }
+
+    public void subscribeToOutboundQueueDepth(final Consumer<QueueDepth> onEvent) {
+        this.onQueueDepthEvent = onEvent;
+    }
+
+    public void setByteTracing(final boolean enabled) {
+        this.traceBytes = enabled;
+    }
+
+    /**
+     * Close the outbound queues, fail the pending flushes and stop the periodic reports, once the link is closed.
+     * The producers blocked on a full queue are released, their commands are rejected.
+     */
+    public void close() {
+        this.close(new GlassesDisconnectedException());
+    }
+
+    /*
+    Helpers
+     */
+    private void close(final Exception error) {
+        this.closed = true;
+        this.interactiveQueue.close();
+        this.bulkQueue.close();
+        this.cancelRepairFlowControl();
+        this.flushTracker.failAll(error);
+        this.subscribeToMetrics(0, null);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private CompletableFuture<Void> flushAsync(final long interactiveTarget, final long bulkTarget,
+            final long timeoutMs) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final FlushTracker.Pending flush = this.flushTracker.register(interactiveTarget, bulkTarget,
+                new FlushTracker.Listener() {
+                    @Override
+                    public void onFlushed() {
+                        future.complete(null);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+        if (!future.isDone()) {
+            final Scheduler.Task timeout = this.scheduler.schedule(() -> {
+                if (this.flushTracker.fail(flush, new TimeoutException("Timed out when waiting for queue flush"))) {
+                    SdkLog.e("glassTest", "Timed out when waiting for queue flush");
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            future.whenComplete((v, e) -> timeout.cancel());
+        }
+        return future;
+    }
+
+    private void onOffered(final boolean accepted, final CommandPriority priority, final int length) {
+        if (!accepted) {
+            SdkLog.w("writeCommand", "Queue full, %s command of %d bytes rejected", priority, length);
+        }
+        this.metrics.onQueueDepth(this.interactiveQueue.size() + this.bulkQueue.size(),
+                this.interactiveQueue.getFrameCount() + this.bulkQueue.getFrameCount());
+        this.notifyQueueDepth();
+        this.unstack();
+    }
+
+    private boolean hasPendingWrites() {
+        return !this.interactiveQueue.isEmpty() || !this.bulkQueue.isEmpty();
+    }
+
+    private void resume(final boolean forced) {
+        this.bulkCredits.onFlowControlCanSend();
+        this.metrics.onFlowControlCanSend(this.scheduler.nanoTime(), forced);
+        if (this.flowControlCanSend.compareAndSet(false, true)) {
+            this.unstack();
+        }
+    }
+
+    private void cancelRepairFlowControl() {
+        final Scheduler.Task repair = this.repairFlowControl;
+        if (repair != null) {
+            repair.cancel();
+            this.repairFlowControl = null;
+        }
+    }
+
+    /*
+    Fill payload up to MTU.
+    The glasses reassemble the byte stream, so a command can be split across two packets.
+    Interactive commands go first, once the bulk command being sent (if any) is complete.
+     */
+    private byte[] unstackPayload() {
+        final int packetSize = this.mtu - ATT_HEADER_SIZE;
+        if (this.packetBuffer == null || this.packetBuffer.length != packetSize) {
+            this.packetBuffer = new byte[packetSize];
+        }
+        int packetLength = 0;
+        this.flushLock.lock();
+        try {
+            final int bulkRemaining = Math.min(packetSize, this.bulkQueue.getCurrentFrameRemaining());
+            packetLength += this.bulkQueue.poll(this.packetBuffer, packetLength, bulkRemaining);
+            final int interactiveLength = this.interactiveQueue.poll(this.packetBuffer, packetLength, packetSize - packetLength);
+            packetLength += interactiveLength;
+            packetLength += this.bulkQueue.poll(this.packetBuffer, packetLength, packetSize - packetLength);
+            // Only packets made of bulk transfers can be written without response
+            this.writingWithoutResponse = interactiveLength == 0 && this.bulkCredits.tryAcquire();
+            this.flushTracker.onPacketSent(this.interactiveQueue.getCompletedFrames(), this.bulkQueue.getCompletedFrames());
+            if (!this.hasPendingWrites()) {
+                this.writeQueueEmpty.signal();
+            }
+        } finally {
+            this.flushLock.unlock();
+        }
+        this.metrics.onPacketSent(packetLength);
+        // The value is copied by the transport on write, full packets can reuse the same buffer
+        return packetLength == packetSize ? this.packetBuffer : Arrays.copyOf(this.packetBuffer, packetLength);
+    }
+
+    /*
+    Write a packet through the transport.
+    When the link is busy, the write is retried on the scheduler with an exponential backoff capped to
+    WRITE_RETRY_MAX_DELAY_MS, until it succeeds or the link is closed: the packet is already counted as sent and
+    the glasses reassemble the byte stream, so it is never dropped. It stays the only one in flight meanwhile.
+    A transport refusing the packet for WRITE_RETRY_TIMEOUT_MS is considered broken: the engine is closed, which
+    fails the pending flushes, and the owner of the link is notified.
+     */
+    private void sendPayload(final byte[] payload, final boolean withoutResponse, final int attempt,
+            final long firstAttemptAt) {
+        if (this.closed) {
+            return;
+        }
+        this.writeStartedAt = this.scheduler.nanoTime();
+        if (this.transport.write(payload, withoutResponse)) {
+            return;
+        }
+        if (this.writeStartedAt - firstAttemptAt >= TimeUnit.MILLISECONDS.toNanos(WRITE_RETRY_TIMEOUT_MS)) {
+            SdkLog.e("unstackWriteCommand", "Could not write rx for %d ms, closing the link", WRITE_RETRY_TIMEOUT_MS);
+            this.close(new IllegalStateException(
+                    String.format("Could not write rx for %d ms", WRITE_RETRY_TIMEOUT_MS)));
+            final Runnable onFailed = this.onWriteFailed;
+            if (onFailed != null) {
+                onFailed.run();
+            }
+            return;
+        }
+        final long delay = Math.min(WRITE_RETRY_INITIAL_DELAY_MS << Math.min(attempt, 16), WRITE_RETRY_MAX_DELAY_MS);
+        this.metrics.onWriteRetry();
+        if (delay < WRITE_RETRY_MAX_DELAY_MS) {
+            SdkLog.w("unstackWriteCommand", "Could not write rx, retry %d in %d ms", attempt + 1, delay);
+        } else if (SdkLog.isLoggable(LogLevel.VERBOSE)) {
+            SdkLog.v("unstackWriteCommand", "Could not write rx, retry %d in %d ms", attempt + 1, delay);
+        }
+        this.scheduler.schedule(() -> this.sendPayload(payload, withoutResponse, attempt + 1, firstAttemptAt),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void unstack() {
+        if (this.flowControlCanSend.get() && this.hasPendingWrites() && this.isWritingCommand.compareAndSet(false, true)) {
+            final byte[] payload = this.unstackPayload();
+            this.notifyQueueDepth();
+            if (this.traceBytes) {
+                SdkLog.dump("unstackWriteCommand", "write rx:", payload);
+            }
+            this.sendPayload(payload, this.writingWithoutResponse, 0, this.scheduler.nanoTime());
+        } else {
+            if (SdkLog.isLoggable(LogLevel.VERBOSE)) {
+                SdkLog.v("unstackWriteCommand", "Stacking %d interactive bytes, %d bulk bytes",
+                        this.interactiveQueue.size(), this.bulkQueue.size());
+                if (!this.flowControlCanSend.get()) {
+                    SdkLog.v("unstackWriteCommand", "flow control busy");
+                }
+                if (this.isWritingCommand.get()) {
+                    SdkLog.v("unstackWriteCommand", "already writing");
+                }
+            }
+            if (!this.hasPendingWrites()) {
+                SdkLog.v("unstackWriteCommand", "nothing to send");
+                // After setting isWriting to false, unstack() is called;
+                // if the queue is empty, signal to the flush
+                this.flushLock.lock();
+                this.writeQueueEmpty.signal();
+                this.flushLock.unlock();
+            }
+        }
+    }
+
+    private void notifyQueueDepth() {
+        final Consumer<QueueDepth> onEvent = this.onQueueDepthEvent;
+        if (onEvent != null) {
+            onEvent.accept(this.getOutboundQueueDepth());
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compute the gap to wait between the acknowledgement of a write on the RX characteristic and the next write.
+ * In adaptive mode, the gap shrinks down to zero while the glasses keep up and grows back on flow control
+ * STOP events or when the write acknowledgements slow down.
+ * In fixed mode, the same gap is always used, as required by old firmwares.
+ */
+final class WritePacing {
+
+    static final long DEFAULT_FIXED_DELAY_MS = 25;
+    private static final long INITIAL_DELAY_US = TimeUnit.MILLISECONDS.toMicros(DEFAULT_FIXED_DELAY_MS);
+    private static final long MAX_DELAY_US = TimeUnit.MILLISECONDS.toMicros(100);
+    private static final long STOP_BACKOFF_US = TimeUnit.MILLISECONDS.toMicros(5);
+    private static final long CONGESTION_STEP_US = TimeUnit.MILLISECONDS.toMicros(1);
+    private static final long MIN_DECREASE_STEP_US = 250;
+    private static final long CONGESTION_MARGIN_NS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private boolean adaptive;
+    private long fixedDelayUs;
+    private long delayUs;
+    private long minLatencyNs;
+    private long avgLatencyNs;
+
+    WritePacing() {
+        super();
+        this.setAdaptive();
+    }
+
+    synchronized void setAdaptive() {
+        this.adaptive = true;
+        this.delayUs = INITIAL_DELAY_US;
+        this.minLatencyNs = Long.MAX_VALUE;
+        this.avgLatencyNs = 0;
+    }
+
+    synchronized void setFixedDelay(final long delayMs) {
+        if (delayMs < 0) {
+            throw new IllegalArgumentException(String.format("Negative write delay: %d", delayMs));
+        }
+        this.adaptive = false;
+        this.fixedDelayUs = TimeUnit.MILLISECONDS.toMicros(delayMs);
+    }
+
+    synchronized boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    /**
+     * Record a write acknowledgement.
+     *
+     * @param latencyNs The time elapsed between the write request and its acknowledgement.
+     * @return The delay to wait before the next write, in microseconds.
+     */
+    synchronized long onWriteAcknowledged(final long latencyNs) {
+        if (!this.adaptive) {
+            return this.fixedDelayUs;
+        }
+        // The first acknowledgement seeds the baseline, which then creeps up slowly so that a new connection
+        // interval is eventually accepted
+        this.minLatencyNs = this.minLatencyNs == Long.MAX_VALUE
+                ? latencyNs
+                : Math.min(latencyNs, this.minLatencyNs + (this.minLatencyNs >> 6));
+        this.avgLatencyNs = this.avgLatencyNs == 0 ? latencyNs : this.avgLatencyNs + ((latencyNs - this.avgLatencyNs) >> 3);
+        if (this.avgLatencyNs > 2 * this.minLatencyNs + CONGESTION_MARGIN_NS) {
+            this.delayUs = Math.min(MAX_DELAY_US, this.delayUs + CONGESTION_STEP_US);
+        } else {
+            this.delayUs -= Math.max(this.delayUs >> 2, MIN_DECREASE_STEP_US);
+            if (this.delayUs < 0) {
+                this.delayUs = 0;
+            }
+        }
+        return this.delayUs;
+    }
+
+    /**
+     * Record a flow control STOP event from the glasses.
+     */
+    synchronized void onFlowControlStop() {
+        if (this.adaptive) {
+            this.delayUs = Math.min(MAX_DELAY_US, Math.max(this.delayUs * 2, STOP_BACKOFF_US));
+        }
+    }
+
+    synchronized long getDelayUs() {
+        return this.adaptive ? this.delayUs : this.fixedDelayUs;
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.types;
+
+public final class ConnectionMetrics {
+
+    private final long bytesSent;
+    private final long packetsSent;
+    private final long bytesReceived;
+    private final long packetsReceived;
+    private final int queueBytes;
+    private final int queueCommands;
+    private final int peakQueueBytes;
+    private final int peakQueueCommands;
+    private final Histogram writeLatency;
+    private final long flowControlStops;
+    private final long flowControlStoppedMs;
+    private final long flowControlForcedResumes;
+    private final long writeRetries;
+    private final Histogram queryRoundTrip;
+    private final long queryTimeouts;
+
+    public ConnectionMetrics(final long bytesSent, final long packetsSent,
+                             final long bytesReceived, final long packetsReceived,
+                             final int queueBytes, final int queueCommands,
+                             final int peakQueueBytes, final int peakQueueCommands,
+                             final Histogram writeLatency,
+                             final long flowControlStops, final long flowControlStoppedMs,
+                             final long flowControlForcedResumes,
+                             final long writeRetries,
+                             final Histogram queryRoundTrip,
+                             final long queryTimeouts) {
+        this.bytesSent = bytesSent;
+        this.packetsSent = packetsSent;
+        this.bytesReceived = bytesReceived;
+        this.packetsReceived = packetsReceived;
+        this.queueBytes = queueBytes;
+        this.queueCommands = queueCommands;
+        this.peakQueueBytes = peakQueueBytes;
+        this.peakQueueCommands = peakQueueCommands;
+        this.writeLatency = writeLatency;
+        this.flowControlStops = flowControlStops;
+        this.flowControlStoppedMs = flowControlStoppedMs;
+        this.flowControlForcedResumes = flowControlForcedResumes;
+        this.writeRetries = writeRetries;
+        this.queryRoundTrip = queryRoundTrip;
+        this.queryTimeouts = queryTimeouts;
+    }
+
+    public long getBytesSent() {
+        return this.bytesSent;
+    }
+
+    public long getPacketsSent() {
+        return this.packetsSent;
+    }
+
+    public long getBytesReceived() {
+        return this.bytesReceived;
+    }
+
+    public long getPacketsReceived() {
+        return this.packetsReceived;
+    }
+
+    public int getQueueBytes() {
+        return this.queueBytes;
+    }
+
+    public int getQueueCommands() {
+        return this.queueCommands;
+    }
+
+    public int getPeakQueueBytes() {
+        return this.peakQueueBytes;
+    }
+
+    public int getPeakQueueCommands() {
+        return this.peakQueueCommands;
+    }
+
+    /**
+     * @return The latency between a write with response and its acknowledgement.
+     */
+    public Histogram getWriteLatency() {
+        return this.writeLatency;
+    }
+
+    public long getFlowControlStops() {
+        return this.flowControlStops;
+    }
+
+    /**
+     * @return The total time spent in the flow control STOP state, including the current one.
+     */
+    public long getFlowControlStoppedMs() {
+        return this.flowControlStoppedMs;
+    }
+
+    /**
+     * @return The number of STOP states ended by the SDK because the glasses did not send CAN SEND in time.
+     */
+    public long getFlowControlForcedResumes() {
+        return this.flowControlForcedResumes;
+    }
+
+    public long getWriteRetries() {
+        return this.writeRetries;
+    }
+
+    /**
+     * @return The time between the enqueue of a query and its response.
+     */
+    public Histogram getQueryRoundTrip() {
+        return this.queryRoundTrip;
+    }
+
+    /**
+     * @return The number of queries that got no response in time.
+     */
+    public long getQueryTimeouts() {
+        return this.queryTimeouts;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionMetrics{" +
+                "bytesSent=" + bytesSent +
+                ", packetsSent=" + packetsSent +
+                ", bytesReceived=" + bytesReceived +
+                ", packetsReceived=" + packetsReceived +
+                ", queueBytes=" + queueBytes +
+                ", queueCommands=" + queueCommands +
+                ", peakQueueBytes=" + peakQueueBytes +
+                ", peakQueueCommands=" + peakQueueCommands +
+                ", writeLatency=" + writeLatency +
+                ", flowControlStops=" + flowControlStops +
+                ", flowControlStoppedMs=" + flowControlStoppedMs +
+                ", flowControlForcedResumes=" + flowControlForcedResumes +
+                ", writeRetries=" + writeRetries +
+                ", queryRoundTrip=" + queryRoundTrip +
+                ", queryTimeouts=" + queryTimeouts +
+                '}';
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.types;
+
+import java.util.Arrays;
+
+/**
+ * Latency distribution in power of two buckets: the bucket i counts the latencies below 2^i ms and, except for
+ * the first one, above 2^(i-1) ms. The last bucket counts everything above.
+ */
+public final class Histogram {
+
+    private final long[] counts;
+
+    public Histogram(final long[] counts) {
+        this.counts = counts;
+    }
+
+    public int getBucketCount() {
+        return this.counts.length;
+    }
+
+    public long getCount(final int bucket) {
+        return this.counts[bucket];
+    }
+
+    /**
+     * @param bucket The bucket index.
+     * @return The exclusive upper bound of the bucket in milliseconds, or Long.MAX_VALUE for the last bucket.
+     */
+    public long getUpperBoundMs(final int bucket) {
+        return bucket == this.counts.length - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (final long count : this.counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the bucket holding the percentile in milliseconds, or 0 if the histogram is empty.
+     */
+    public long getPercentileUpperBoundMs(final double percentile) {
+        final long total = this.getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return this.getUpperBoundMs(i);
+            }
+        }
+        return this.getUpperBoundMs(this.counts.length - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{" +
+                "counts=" + Arrays.toString(counts) +
+                '}';
+    }
+
+}
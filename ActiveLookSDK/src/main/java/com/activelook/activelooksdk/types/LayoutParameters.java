@@ -19,6 +19,8 @@ import com.activelook.activelooksdk.core.Payload;
 
 public class LayoutParameters {
 
+    private static final int HEADER_SIZE = 17;
+
     private final byte id;
     private final short x;
     private final byte y;
@@ -137,10 +139,9 @@ public class LayoutParameters {
     }
 
     public byte[] toBytes() {
-        final byte[] subBytes = this.subCommands.getBytes();
-        return new CommandData()
+        return CommandData.withCapacity(HEADER_SIZE + this.subCommands.size())
                 .addUInt8(this.id)
-                .addUInt8((byte) subBytes.length)
+                .addUInt8((byte) this.subCommands.size())
                 .addUInt16(this.x)
                 .addUInt8(this.y)
                 .addUInt16(this.width)
@@ -153,7 +154,7 @@ public class LayoutParameters {
                 .addUInt8(this.textY)
                 .add(CommandData.fromRotation(this.rotation))
                 .add(CommandData.fromBoolean(this.textOpacity))
-                .add(subBytes).getBytes();
+                .add(this.subCommands).getBytes();
     }
 
     @Override
@@ -0,0 +1,42 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.types;
+
+public enum LogLevel {
+    /**
+     * Every log, including the state of the write queue on each packet
+     */
+    VERBOSE,
+    /**
+     * Commands and notifications exchanged with the glasses
+     */
+    DEBUG,
+    /**
+     * Connection events
+     */
+    INFO,
+    /**
+     * Recoverable issues, like retried writes or rejected commands
+     */
+    WARN,
+    /**
+     * Errors only
+     */
+    ERROR,
+    /**
+     * No log at all
+     */
+    NONE,
+}
@@ -0,0 +1,50 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.types;
+
+public final class QueueDepth {
+
+    private final int pendingBytes;
+    private final int pendingCommands;
+    private final long droppedCommands;
+
+    public QueueDepth(final int pendingBytes, final int pendingCommands, final long droppedCommands) {
+        this.pendingBytes = pendingBytes;
+        this.pendingCommands = pendingCommands;
+        this.droppedCommands = droppedCommands;
+    }
+
+    public int getPendingBytes() {
+        return this.pendingBytes;
+    }
+
+    public int getPendingCommands() {
+        return this.pendingCommands;
+    }
+
+    public long getDroppedCommands() {
+        return this.droppedCommands;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueDepth{" +
+                "pendingBytes=" + pendingBytes +
+                ", pendingCommands=" + pendingCommands +
+                ", droppedCommands=" + droppedCommands +
+                '}';
+    }
+
+}
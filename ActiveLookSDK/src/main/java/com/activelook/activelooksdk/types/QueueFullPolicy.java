@@ -0,0 +1,35 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.types;
+
+public enum QueueFullPolicy {
+    /**
+     * Wait until the command fits, the calling thread is blocked meanwhile.
+     * The command is rejected after 5 seconds, or as soon as the glasses are disconnected.
+     */
+    BLOCK,
+    /**
+     * Reject the command
+     */
+    REJECT,
+    /**
+     * Drop the oldest pending commands until the command fits
+     */
+    DROP_OLDEST,
+    /**
+     * Replace the pending display command of the same kind for the same gauge or layout, reject the command otherwise
+     */
+    COALESCE,
+}
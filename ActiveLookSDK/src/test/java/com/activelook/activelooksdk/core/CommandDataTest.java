@@ -0,0 +1,70 @@
+package com.activelook.activelooksdk.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+public class CommandDataTest {
+
+    @Test
+    public void appendsAreEncodedBigEndian() {
+        final CommandData data = new CommandData((byte) 0x01)
+                .addUInt8((short) 0xFF)
+                .addInt16((short) -2)
+                .addUInt16(0x1234)
+                .addInt32(0x01020304)
+                .addUInt32(0xFFFFFFFEL)
+                .addNulTerminatedStrings("ab")
+                .addNonNulTerminatedString("c");
+        assertArrayEquals(new byte[] {
+                0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, 0x12, 0x34, 0x01, 0x02, 0x03, 0x04,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, 'a', 'b', 0x00, 'c'
+        }, data.getBytes());
+        assertEquals(18, data.size());
+    }
+
+    @Test
+    public void returnedBytesAreNotChangedByLaterAppends() {
+        final CommandData data = new CommandData();
+        for (short i = 0; i < 100; i++) {
+            data.addInt16(i);
+        }
+        final byte[] bytes = data.getBytes();
+        assertEquals(200, bytes.length);
+        data.addUInt8((short) 7);
+        assertEquals(200, bytes.length);
+        assertEquals(201, data.getBytes().length);
+        assertEquals(7, data.getBytes()[200]);
+    }
+
+    @Test
+    public void exactCapacityIsNotCopied() {
+        final CommandData data = CommandData.withCapacity(3).addUInt8((short) 1).addUInt16(2);
+        assertSame(data.getBytes(), data.getBytes());
+        final byte[] wrapped = { 1, 2, 3 };
+        assertSame(wrapped, new CommandData(wrapped).getBytes());
+    }
+
+    @Test
+    public void bufferIsAViewOfTheData() {
+        final CommandData data = CommandData.withCapacity(16).addUInt16(0x0102, 0x0304);
+        final ByteBuffer view = data.asReadOnlyBuffer();
+        data.addUInt8((short) 5);
+        assertEquals(4, view.remaining());
+        assertEquals(0x01020304, view.getInt());
+    }
+
+    @Test
+    public void splitOnlyCoversTheData() {
+        final CommandData data = CommandData.withCapacity(64).add(new byte[10]);
+        final List<CommandData> chunks = data.split(4);
+        assertEquals(3, chunks.size());
+        assertEquals(2, chunks.get(2).getBytes().length);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.activelook.activelooksdk.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+public class CommandTest {
+
+    @Test
+    public void shortFrameIsEncoded() {
+        final Command command = new Command((byte) 0x30, new CommandData().addInt16((short) 1, (short) 2));
+        command.setQueryId(new byte[] { 0x07 });
+        assertArrayEquals(new byte[] {
+                (byte) 0xFF, 0x30, 0x01, 0x0A, 0x07, 0x00, 0x01, 0x00, 0x02, (byte) 0xAA
+        }, command.toBytes());
+        assertArrayEquals(new byte[] { (byte) 0xFF, 0x01, 0x00, 0x05, (byte) 0xAA }, new Command((byte) 0x01).toBytes());
+    }
+
+    @Test
+    public void longFrameHasATwoBytesLength() {
+        final Command command = new Command((byte) 0x41, new CommandData(new byte[260]));
+        final byte[] frame = command.toBytes();
+        assertEquals(266, frame.length);
+        assertArrayEquals(new byte[] { (byte) 0xFF, 0x41, 0x10, 0x01, 0x0A }, Arrays.copyOf(frame, 5));
+        assertEquals((byte) 0xAA, frame[265]);
+    }
+
+    @Test
+    public void sliceIsEncodedLikeACopy() {
+        final byte[] bytes = { 0, 1, 2, 3, 4, 5, 6, 7 };
+        final Command slice = new Command((byte) 0x41, bytes, 3, 4);
+        final Command copy = new Command((byte) 0x41, new CommandData((byte) 3, (byte) 4, (byte) 5, (byte) 6));
+        assertArrayEquals(copy.toBytes(), slice.toBytes());
+        assertArrayEquals(new byte[] { 3, 4, 5, 6 }, slice.getData());
+    }
+
+    @Test
+    public void frameWrapsAroundARing() {
+        final Command command = new Command((byte) 0x37, new CommandData((byte) 1, (byte) 2, (byte) 3));
+        command.setQueryId(new byte[] { 0x09 });
+        final byte[] expected = command.toBytes();
+        final byte[] ring = new byte[16];
+        command.encode(ring, 13, ring.length - 1);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], ring[(13 + i) & 15]);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.activelook.activelooksdk.core;
+
+import androidx.core.util.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QueryEvictionTest {
+
+    private static final Consumer<byte[]> IGNORE = bytes -> { };
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void commandsWithoutCallbackKeepPendingQueries() {
+        final QueryRegistry registry = new QueryRegistry(() -> { });
+        registry.setTimeout(1000);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final PendingQuery query = new PendingQuery(registry, IGNORE);
+        final long id = registry.register(query, 1);
+        query.setId(id);
+        query.setListener(failure::set);
+        for (int i = 0; i < 256; i++) {
+            assertNotEquals(id, registry.register(null, 1));
+        }
+        assertTrue(query.isPending());
+        assertEquals(1, registry.getPendingCount());
+        registry.expire(System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+        assertFalse(query.isPending());
+        assertTrue(failure.get() instanceof TimeoutException);
+    }
+
+    @Test
+    public void commandsWithoutCallbackShareTheIdOfAPendingQueryOnlyWhenAllSlotsAreBusy() {
+        final QueryRegistry registry = new QueryRegistry(() -> { });
+        final PendingQuery[] queries = new PendingQuery[256];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new PendingQuery(registry, IGNORE);
+            queries[i].setId(registry.register(queries[i], 1));
+        }
+        final long id = registry.register(null, 1);
+        assertEquals(256, registry.getPendingCount());
+        assertSame(queries[(int) id], registry.take(id));
+    }
+
+    @Test
+    public void evictedQueryIsFailed() {
+        final QueryRegistry registry = new QueryRegistry(() -> { });
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final PendingQuery first = new PendingQuery(registry, IGNORE);
+        final long id = registry.register(first, 1);
+        first.setId(id);
+        first.setListener(failure::set);
+        for (int i = 0; i < 256; i++) {
+            registry.register(IGNORE, 1);
+        }
+        assertFalse(first.isPending());
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertEquals(256, registry.getPendingCount());
+    }
+
+}
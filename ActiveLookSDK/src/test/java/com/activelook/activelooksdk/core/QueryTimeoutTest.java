@@ -0,0 +1,91 @@
+package com.activelook.activelooksdk.core;
+
+import androidx.core.util.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QueryTimeoutTest {
+
+    private static final Consumer<byte[]> IGNORE = bytes -> { };
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void queryExpiresOnceItsDeadlineHasElapsed() {
+        final AtomicInteger timeouts = new AtomicInteger();
+        final QueryRegistry registry = new QueryRegistry(timeouts::incrementAndGet);
+        registry.setTimeout(1000);
+        final long sentAt = System.nanoTime();
+        final long id = registry.register(IGNORE, 1);
+        assertEquals(0, registry.expire(sentAt + TimeUnit.MILLISECONDS.toNanos(500)));
+        assertEquals(1, registry.expire(sentAt + TimeUnit.MILLISECONDS.toNanos(1000) + 2 * QueryRegistry.TICK_NS));
+        assertNull(registry.take(id));
+        assertEquals(1, timeouts.get());
+        assertEquals(0, registry.getPendingCount());
+    }
+
+    @Test
+    public void deadlinesBeyondOneTurnOfTheWheelAreKept() {
+        final QueryRegistry registry = new QueryRegistry(() -> { });
+        registry.setTimeout(60000);
+        final long sentAt = System.nanoTime();
+        final long id = registry.register(IGNORE, 1);
+        for (long ms = 100; ms < 60000; ms += 100) {
+            assertEquals(0, registry.expire(sentAt + TimeUnit.MILLISECONDS.toNanos(ms)));
+        }
+        assertEquals(1, registry.expire(sentAt + TimeUnit.MILLISECONDS.toNanos(60000) + 2 * QueryRegistry.TICK_NS));
+        assertNull(registry.take(id));
+    }
+
+    @Test
+    public void answeredQueryDoesNotExpire() {
+        final AtomicInteger timeouts = new AtomicInteger();
+        final QueryRegistry registry = new QueryRegistry(timeouts::incrementAndGet);
+        registry.setTimeout(1000);
+        final long sentAt = System.nanoTime();
+        assertNotNull(registry.take(registry.register(IGNORE, 1)));
+        final long id = registry.register(IGNORE, 1);
+        assertEquals(1, registry.expire(sentAt + TimeUnit.SECONDS.toNanos(10)));
+        assertEquals(1, timeouts.get());
+        assertNull(registry.take(id));
+    }
+
+    @Test
+    public void queryWithoutTimeoutNeverExpires() {
+        final QueryRegistry registry = new QueryRegistry(() -> { });
+        registry.setTimeout(0);
+        final long id = registry.register(IGNORE, 1);
+        assertEquals(0, registry.expire(System.nanoTime() + TimeUnit.HOURS.toNanos(1)));
+        assertNotNull(registry.take(id));
+    }
+
+    @Test
+    public void pendingQueryIsNotifiedOfItsTimeout() {
+        final QueryRegistry registry = new QueryRegistry(() -> { });
+        registry.setTimeout(1000);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final PendingQuery query = new PendingQuery(registry, IGNORE);
+        query.setId(registry.register(query, 1));
+        query.setListener(failure::set);
+        assertTrue(query.isPending());
+        registry.expire(System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+        assertFalse(query.isPending());
+        assertTrue(failure.get() instanceof TimeoutException);
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.types.Rotation;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class CommandBatchTest {
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void batchIsWrittenAsOneBuffer() {
+        final RecordingGlasses separate = new RecordingGlasses();
+        separate.clear();
+        separate.rectf((short) 0, (short) 0, (short) 100, (short) 20);
+        separate.txt((short) 90, (short) 15, Rotation.TOP_LR, (byte) 1, (byte) 15, "12");
+        separate.gaugeDisplayTemplate((byte) 1).setValue((byte) 50).send();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (final byte[] frame : separate.frames) {
+            expected.write(frame, 0, frame.length);
+        }
+
+        final RecordingGlasses batched = new RecordingGlasses();
+        batched.batch(batch -> {
+            batch.clear();
+            batch.rectf((short) 0, (short) 0, (short) 100, (short) 20);
+            batched.batch(nested -> nested.txt((short) 90, (short) 15, Rotation.TOP_LR, (byte) 1, (byte) 15, "12"));
+            batched.gaugeDisplayTemplate((byte) 1).setValue((byte) 50).send();
+        });
+        assertEquals(1, batched.frames.size());
+        assertArrayEquals(expected.toByteArray(), batched.frames.get(0));
+    }
+
+    @Test
+    public void failedBatchIsNotWritten() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        try {
+            glasses.batch(batch -> {
+                batch.clear();
+                throw new IllegalStateException();
+            });
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(glasses.frames.isEmpty());
+        glasses.clear();
+        assertEquals(1, glasses.frames.size());
+    }
+
+    @Test
+    public void failedBatchReleasesItsQueries() throws InterruptedException {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final IllegalStateException cause = new IllegalStateException();
+        final List<CompletableFuture<Integer>> queries = new ArrayList<>();
+        try {
+            glasses.batch(batch -> {
+                queries.add(glasses.batteryAsync());
+                queries.add(glasses.batteryAsync());
+                throw cause;
+            });
+        } catch (IllegalStateException e) {
+            assertSame(cause, e);
+        }
+        assertEquals(2, queries.size());
+        for (final CompletableFuture<Integer> query : queries) {
+            assertTrue(query.isDone());
+            try {
+                query.get();
+                fail("The query was not released");
+            } catch (ExecutionException e) {
+                assertSame(cause, e.getCause());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.CommandTemplate;
+import com.activelook.activelooksdk.core.SdkLog;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CommandTemplateTest {
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void gaugeValueIsPatched() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final CommandTemplate template = glasses.gaugeDisplayTemplate((byte) 2);
+        template.setValue((byte) 40).send();
+        template.setValue((byte) 41).send();
+        assertArrayEquals(new byte[] { (byte) 0xFF, 0x70, 0x00, 0x07, 0x02, 40, (byte) 0xAA }, glasses.frames.get(0));
+        assertArrayEquals(new byte[] { (byte) 0xFF, 0x70, 0x00, 0x07, 0x02, 41, (byte) 0xAA }, glasses.frames.get(1));
+        assertEquals(0x7002, (int) glasses.keys.get(0));
+    }
+
+    @Test
+    public void imagePositionIsPatched() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        glasses.imgDisplayTemplate((byte) 1).setPosition((short) 300, (short) -1).send();
+        assertArrayEquals(new byte[] {
+                (byte) 0xFF, 0x42, 0x00, 0x0A, 0x01, 0x01, 0x2C, (byte) 0xFF, (byte) 0xFF, (byte) 0xAA
+        }, glasses.frames.get(0));
+        assertEquals(-1, (int) glasses.keys.get(0));
+    }
+
+    @Test
+    public void textIsPaddedAndTruncated() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final CommandTemplate template = glasses.layoutDisplayTemplate((byte) 10, 4);
+        template.setText("42").send();
+        template.setText(new StringBuilder("12345")).send();
+        template.setText("\u00e9").send();
+        assertArrayEquals(new byte[] {
+                (byte) 0xFF, 0x62, 0x00, 0x0B, 0x0A, '4', '2', ' ', ' ', 0x00, (byte) 0xAA
+        }, glasses.frames.get(0));
+        assertArrayEquals(new byte[] {
+                (byte) 0xFF, 0x62, 0x00, 0x0B, 0x0A, '1', '2', '3', '4', 0x00, (byte) 0xAA
+        }, glasses.frames.get(1));
+        assertEquals('?', glasses.frames.get(2)[5]);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void missingSlotIsRejected() {
+        new RecordingGlasses().gaugeDisplayTemplate((byte) 1).setText("no");
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.types.CommandPriority;
+import com.activelook.activelooksdk.types.LogLevel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DefaultWriteFrameTest {
+
+    /*
+    Backend relying on the default writeFrame, as the debug glasses do
+     */
+    private static final class BytesGlasses extends GlassesImpl {
+
+        private final List<byte[]> frames = new ArrayList<>();
+
+        BytesGlasses() {
+            super("", glasses -> { });
+        }
+
+        @Override
+        protected void writeBytes(final byte[] bytes, final CommandPriority priority, final int supersedeKey) {
+            this.frames.add(bytes.clone());
+        }
+
+    }
+
+    @Test
+    public void commandIsWrittenThroughWriteBytes() {
+        final BytesGlasses glasses = new BytesGlasses();
+        glasses.clear();
+        assertEquals(1, glasses.frames.size());
+        final byte[] frame = glasses.frames.get(0);
+        assertEquals(6, frame.length);
+        assertArrayEquals(new byte[] { (byte) 0xFF, 0x01, 0x01, 0x06 }, new byte[] { frame[0], frame[1], frame[2], frame[3] });
+        assertEquals((byte) 0xAA, frame[5]);
+    }
+
+    @Test
+    public void commandIsLoggedAtDebugWithoutByteTracing() {
+        final List<String> messages = new ArrayList<>();
+        final LogLevel level = SdkLog.getLevel();
+        SdkLog.setLevel(LogLevel.DEBUG);
+        SdkLog.setSink((logLevel, tag, message, error) -> {
+            if (logLevel == LogLevel.DEBUG && "DebugGlasses".equals(tag)) {
+                messages.add(message);
+            }
+        });
+        try {
+            new GlassesImpl("", glasses -> { }).clear();
+        } finally {
+            SdkLog.setLevel(level);
+            SdkLog.setSink((logLevel, tag, message, error) -> { });
+        }
+        assertEquals(1, messages.size());
+        assertEquals("writeCommand(0x01, 6 bytes)", messages.get(0));
+    }
+
+}
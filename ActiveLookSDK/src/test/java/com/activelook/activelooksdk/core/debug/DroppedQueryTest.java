@@ -0,0 +1,116 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.core.transport.TransportEngine;
+import com.activelook.activelooksdk.core.transport.VirtualScheduler;
+import com.activelook.activelooksdk.types.CommandPriority;
+import com.activelook.activelooksdk.types.QueueFullPolicy;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class DroppedQueryTest {
+
+    /*
+    Glasses writing through an engine whose first packet is never acknowledged, so that the next frames stay queued
+     */
+    private static final class EngineGlasses extends GlassesImpl {
+
+        private final TransportEngine engine;
+        private final List<byte[]> packets = new ArrayList<>();
+
+        EngineGlasses(final QueueFullPolicy policy) {
+            super("", glasses -> { });
+            this.engine = new TransportEngine((packet, withoutResponse) -> this.packets.add(packet),
+                    new VirtualScheduler());
+            this.engine.setOutboundQueueLimits(1024, 1, policy);
+            this.engine.setOnDropped(this::failDroppedQueries);
+        }
+
+        @Override
+        protected void writeBytes(final byte[] bytes, final CommandPriority priority, final int supersedeKey) {
+            this.engine.write(bytes, priority, supersedeKey);
+        }
+
+        @Override
+        protected void writeFrame(final Command command, final CommandPriority priority, final int supersedeKey) {
+            this.engine.write(command, priority, supersedeKey);
+        }
+
+    }
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    private static void assertFailed(final CompletableFuture<?> future) throws InterruptedException {
+        assertTrue(future.isDone());
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            return;
+        }
+        throw new AssertionError("The future did not fail");
+    }
+
+    @Test
+    public void rejectedQueryFailsImmediately() throws InterruptedException {
+        final EngineGlasses glasses = new EngineGlasses(QueueFullPolicy.REJECT);
+        final CompletableFuture<Integer> sent = glasses.batteryAsync();
+        final CompletableFuture<Integer> queued = glasses.batteryAsync();
+        final CompletableFuture<Integer> rejected = glasses.batteryAsync();
+        assertFalse(sent.isDone());
+        assertFalse(queued.isDone());
+        assertFailed(rejected);
+    }
+
+    @Test
+    public void droppedQueryFailsImmediately() throws InterruptedException {
+        final EngineGlasses glasses = new EngineGlasses(QueueFullPolicy.DROP_OLDEST);
+        final CompletableFuture<Integer> sent = glasses.batteryAsync();
+        final CompletableFuture<Integer> dropped = glasses.batteryAsync();
+        final CompletableFuture<Integer> queued = glasses.batteryAsync();
+        assertFalse(sent.isDone());
+        assertFailed(dropped);
+        assertFalse(queued.isDone());
+    }
+
+    @Test
+    public void oversizedResponseFailsItsQuery() throws InterruptedException {
+        final EngineGlasses glasses = new EngineGlasses(QueueFullPolicy.BLOCK);
+        final CompletableFuture<Integer> battery = glasses.batteryAsync();
+        final byte[] query = glasses.packets.get(0);
+        final int queryIdLength = query[2] & 0x0F;
+        final int headerSize = (query[2] & 0x10) == 0 ? 4 : 5;
+        final int length = 5 + queryIdLength + 513 + 1;
+        final byte[] response = new byte[length];
+        response[0] = (byte) 0xFF;
+        response[1] = query[1];
+        response[2] = (byte) (0x10 | queryIdLength);
+        response[3] = (byte) (length >> 8);
+        response[4] = (byte) length;
+        System.arraycopy(query, headerSize, response, 5, queryIdLength);
+        response[length - 1] = (byte) 0xAA;
+        glasses.engine.onReceived(response);
+        assertFailed(battery);
+    }
+
+    @Test
+    public void commandsAreRejectedOnceTheEngineIsClosed() throws InterruptedException {
+        final EngineGlasses glasses = new EngineGlasses(QueueFullPolicy.BLOCK);
+        glasses.engine.close();
+        assertFailed(glasses.batteryAsync());
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.exceptions.GlassesDisconnectedException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class QueryFutureTest {
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void futuresAreCompletedWithTheirResponse() throws Exception {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final CompletableFuture<Integer> first = glasses.batteryAsync();
+        final CompletableFuture<Long> second = glasses.pixelCountAsync();
+        glasses.respond(response(glasses.frames.get(1), 0, 0, 0x01, 0x00));
+        assertFalse(first.isDone());
+        glasses.respond(response(glasses.frames.get(0), 42));
+        CompletableFuture.allOf(first, second).get();
+        assertEquals(42, (int) first.get());
+        assertEquals(256L, (long) second.get());
+    }
+
+    @Test
+    public void futuresFailOnDisconnection() throws InterruptedException {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final CompletableFuture<Integer> battery = glasses.batteryAsync();
+        glasses.disconnect();
+        try {
+            battery.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof GlassesDisconnectedException);
+            return;
+        }
+        throw new AssertionError("The future did not fail");
+    }
+
+    @Test
+    public void cancellingTheFutureCancelsTheQuery() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final CompletableFuture<Integer> battery = glasses.batteryAsync();
+        assertTrue(battery.cancel(false));
+        glasses.respond(response(glasses.frames.get(0), 42));
+        assertTrue(battery.isCancelled());
+    }
+
+    @Test
+    public void futuresAreCompletedOnTheQueryExecutor() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final List<Runnable> tasks = new ArrayList<>();
+        glasses.setQueryExecutor(tasks::add);
+        final CompletableFuture<Integer> battery = glasses.batteryAsync();
+        glasses.respond(response(glasses.frames.get(0), 42));
+        assertFalse(battery.isDone());
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(42, (int) battery.join());
+    }
+
+    @Test
+    public void futureFailsWhenTheResponseCannotBeDecoded() throws InterruptedException {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final CompletableFuture<Integer> battery = glasses.batteryAsync();
+        glasses.respond(response(glasses.frames.get(0)));
+        assertTrue(battery.isDone());
+        try {
+            battery.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ArrayIndexOutOfBoundsException);
+            return;
+        }
+        throw new AssertionError("The future did not fail");
+    }
+
+    private static Command response(final byte[] query, final int... data) {
+        final byte[] frame = new byte[6 + data.length];
+        frame[0] = (byte) 0xFF;
+        frame[1] = query[1];
+        frame[2] = 0x01;
+        frame[3] = (byte) frame.length;
+        frame[4] = query[4];
+        for (int i = 0; i < data.length; i++) {
+            frame[5 + i] = (byte) data[i];
+        }
+        frame[frame.length - 1] = (byte) 0xAA;
+        return new Command(frame);
+    }
+
+}
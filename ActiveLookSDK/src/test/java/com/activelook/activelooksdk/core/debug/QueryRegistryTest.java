@@ -0,0 +1,153 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.QueryHandle;
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.SdkLog;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueryRegistryTest {
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void concurrentQueriesGetDistinctIds() throws InterruptedException {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final AtomicInteger results = new AtomicInteger();
+        final int threads = 4;
+        final int queries = 50;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < queries; i++) {
+                    glasses.battery(level -> results.incrementAndGet());
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        final Set<Integer> ids = new HashSet<>();
+        for (final byte[] frame : glasses.frames) {
+            ids.add(frame[4] & 0xFF);
+            glasses.respond(new Command(new byte[] { (byte) 0xFF, frame[1], 0x01, 0x07, frame[4], 42, (byte) 0xAA }));
+        }
+        assertEquals(threads * queries, ids.size());
+        assertEquals(threads * queries, results.get());
+    }
+
+    @Test
+    public void responseIsDeliveredOnce() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final AtomicInteger results = new AtomicInteger();
+        glasses.battery(level -> results.incrementAndGet());
+        final byte[] frame = glasses.frames.get(0);
+        final Command response = new Command(new byte[] { (byte) 0xFF, frame[1], 0x01, 0x07, frame[4], 42, (byte) 0xAA });
+        glasses.respond(response);
+        glasses.respond(response);
+        assertEquals(1, results.get());
+    }
+
+    @Test
+    public void wideIdsAllowMoreThan256PendingQueries() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        glasses.setQueryIdWidth(2);
+        final AtomicInteger results = new AtomicInteger();
+        for (int i = 0; i < 300; i++) {
+            glasses.battery(level -> results.incrementAndGet());
+        }
+        final Set<Integer> ids = new HashSet<>();
+        for (final byte[] frame : glasses.frames) {
+            assertEquals(0x02, frame[2]);
+            ids.add((frame[4] & 0xFF) << 8 | (frame[5] & 0xFF));
+            glasses.respond(response(frame, 2));
+        }
+        assertEquals(300, ids.size());
+        assertEquals(300, results.get());
+    }
+
+    @Test
+    public void lateResponseOfAReplacedQueryIsDropped() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        glasses.setQueryIdWidth(2);
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger others = new AtomicInteger();
+        glasses.battery(level -> first.incrementAndGet());
+        for (int i = 0; i < 1024; i++) {
+            glasses.battery(level -> others.incrementAndGet());
+        }
+        glasses.respond(response(glasses.frames.get(0), 2));
+        assertEquals(0, first.get());
+        for (final byte[] frame : glasses.frames.subList(1, glasses.frames.size())) {
+            glasses.respond(response(frame, 2));
+        }
+        assertEquals(1024, others.get());
+    }
+
+    @Test
+    public void cancelledQueryIgnoresItsResponse() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final AtomicInteger results = new AtomicInteger();
+        final QueryHandle query = glasses.battery(level -> results.incrementAndGet());
+        assertTrue(query.isPending());
+        assertTrue(query.cancel());
+        assertFalse(query.isPending());
+        assertFalse(query.cancel());
+        glasses.respond(response(glasses.frames.get(0), 1));
+        assertEquals(0, results.get());
+    }
+
+    @Test
+    public void disconnectionReleasesPendingQueries() {
+        final RecordingGlasses glasses = new RecordingGlasses();
+        final AtomicInteger results = new AtomicInteger();
+        final QueryHandle first = glasses.battery(level -> results.incrementAndGet());
+        final QueryHandle second = glasses.vers(version -> results.incrementAndGet());
+        glasses.disconnect();
+        assertFalse(first.isPending());
+        assertFalse(second.isPending());
+        for (final byte[] frame : glasses.frames) {
+            glasses.respond(response(frame, 1));
+        }
+        assertEquals(0, results.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void widthIsBounded() {
+        new RecordingGlasses().setQueryIdWidth(5);
+    }
+
+    private static Command response(final byte[] query, final int width) {
+        final byte[] frame = new byte[6 + width];
+        frame[0] = (byte) 0xFF;
+        frame[1] = query[1];
+        frame[2] = (byte) width;
+        frame[3] = (byte) frame.length;
+        System.arraycopy(query, 4, frame, 4, width);
+        frame[4 + width] = 42;
+        frame[5 + width] = (byte) 0xAA;
+        return new Command(frame);
+    }
+
+}
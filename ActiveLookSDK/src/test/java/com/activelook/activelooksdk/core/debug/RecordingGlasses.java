@@ -0,0 +1,29 @@
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.types.CommandPriority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class RecordingGlasses extends GlassesImpl {
+
+    final List<byte[]> frames = Collections.synchronizedList(new ArrayList<>());
+    final List<Integer> keys = Collections.synchronizedList(new ArrayList<>());
+
+    RecordingGlasses() {
+        super("", glasses -> { });
+    }
+
+    @Override
+    protected void writeBytes(final byte[] bytes, final CommandPriority priority, final int supersedeKey) {
+        this.frames.add(bytes.clone());
+        this.keys.add(supersedeKey);
+    }
+
+    void respond(final Command response) {
+        this.delegateToCallback(response);
+    }
+
+}
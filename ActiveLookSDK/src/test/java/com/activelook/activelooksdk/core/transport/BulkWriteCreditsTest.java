@@ -0,0 +1,99 @@
+package com.activelook.activelooksdk.core.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+public class BulkWriteCreditsTest {
+
+    private static int acquireAll(final BulkWriteCredits credits) {
+        int acquired = 0;
+        while (credits.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    @Test
+    public void noCreditUntilEnabled() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        assertFalse(credits.isEnabled());
+        assertFalse(credits.tryAcquire());
+        credits.onAcknowledged();
+        assertFalse(credits.tryAcquire());
+    }
+
+    @Test
+    public void acknowledgementRefillsTheWindow() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        credits.setEnabled(true);
+        assertEquals(BulkWriteCredits.DEFAULT_WINDOW, acquireAll(credits));
+        credits.onAcknowledged();
+        assertEquals(BulkWriteCredits.DEFAULT_WINDOW, acquireAll(credits));
+    }
+
+    @Test
+    public void stopDropsTheCreditsUntilCanSend() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        credits.setEnabled(true);
+        assertTrue(credits.tryAcquire());
+        credits.onFlowControlStop();
+        assertFalse(credits.tryAcquire());
+        credits.onFlowControlCanSend();
+        assertEquals(BulkWriteCredits.DEFAULT_WINDOW, acquireAll(credits));
+    }
+
+    @Test
+    public void overflowHalvesTheWindow() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        credits.setEnabled(true);
+        assertFalse(credits.onOverflow(0));
+        assertFalse(credits.tryAcquire());
+        credits.onAcknowledged();
+        assertEquals(BulkWriteCredits.DEFAULT_WINDOW / 2, acquireAll(credits));
+        assertTrue(credits.isEnabled());
+    }
+
+    @Test
+    public void overflowBurstDisablesWritesWithoutResponse() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        credits.setEnabled(true);
+        final long step = TimeUnit.MILLISECONDS.toNanos(100);
+        assertFalse(credits.onOverflow(0));
+        assertFalse(credits.onOverflow(step));
+        assertTrue(credits.onOverflow(2 * step));
+        assertFalse(credits.isEnabled());
+        credits.onAcknowledged();
+        assertFalse(credits.tryAcquire());
+        assertFalse(credits.onOverflow(3 * step));
+    }
+
+    @Test
+    public void spreadOverflowsDisableWritesWithoutResponseOnceTheWindowIsExhausted() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        credits.setEnabled(true);
+        final long period = TimeUnit.SECONDS.toNanos(2);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(credits.onOverflow(i * period));
+            assertTrue(credits.isEnabled());
+        }
+        assertEquals(1, credits.getWindow());
+        assertTrue(credits.onOverflow(3 * period));
+        assertFalse(credits.isEnabled());
+    }
+
+    @Test
+    public void enablingAgainRestoresTheWindow() {
+        final BulkWriteCredits credits = new BulkWriteCredits();
+        credits.setEnabled(true);
+        credits.onOverflow(0);
+        credits.setEnabled(true);
+        assertEquals(BulkWriteCredits.DEFAULT_WINDOW, credits.getWindow());
+        assertEquals(BulkWriteCredits.DEFAULT_WINDOW, acquireAll(credits));
+    }
+
+}
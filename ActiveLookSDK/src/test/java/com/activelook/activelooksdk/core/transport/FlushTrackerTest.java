@@ -0,0 +1,82 @@
+package com.activelook.activelooksdk.core.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeoutException;
+
+public class FlushTrackerTest {
+
+    private static final class Result implements FlushTracker.Listener {
+
+        private boolean flushed;
+        private Exception error;
+
+        @Override
+        public void onFlushed() {
+            this.flushed = true;
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            this.error = e;
+        }
+
+    }
+
+    private static void send(final FlushTracker tracker, final OutboundQueue interactive, final OutboundQueue bulk,
+                             final int packetSize) {
+        final byte[] packet = new byte[packetSize];
+        final int length = interactive.poll(packet, 0, packetSize);
+        bulk.poll(packet, length, packetSize - length);
+        tracker.onPacketSent(interactive.getCompletedFrames(), bulk.getCompletedFrames());
+    }
+
+    @Test
+    public void emptyQueuesAreFlushedImmediately() {
+        final FlushTracker tracker = new FlushTracker();
+        final Result result = new Result();
+        tracker.register(0, 0, result);
+        assertTrue(result.flushed);
+    }
+
+    @Test
+    public void flushWaitsForTheAcknowledgementOfPriorFrames() {
+        final FlushTracker tracker = new FlushTracker();
+        final OutboundQueue interactive = new OutboundQueue();
+        final OutboundQueue bulk = new OutboundQueue();
+        interactive.offer(new byte[4], 0, 4);
+        bulk.offer(new byte[6], 0, 6);
+        final Result result = new Result();
+        tracker.register(interactive.getEnqueuedFrames(), bulk.getEnqueuedFrames(), result);
+        interactive.offer(new byte[20], 0, 20);
+        send(tracker, interactive, bulk, 8);
+        tracker.onPacketAcknowledged();
+        assertFalse(result.flushed);
+        send(tracker, interactive, bulk, 30);
+        assertFalse(result.flushed);
+        tracker.onPacketAcknowledged();
+        assertTrue(result.flushed);
+        assertNull(result.error);
+    }
+
+    @Test
+    public void pendingFlushesFail() {
+        final FlushTracker tracker = new FlushTracker();
+        final Result timedOut = new Result();
+        final Result disconnected = new Result();
+        final FlushTracker.Pending flush = tracker.register(1, 0, timedOut);
+        tracker.register(2, 0, disconnected);
+        assertTrue(tracker.fail(flush, new TimeoutException()));
+        assertFalse(tracker.fail(flush, new TimeoutException()));
+        tracker.failAll(new IllegalStateException());
+        assertEquals(TimeoutException.class, timedOut.error.getClass());
+        assertEquals(IllegalStateException.class, disconnected.error.getClass());
+        assertFalse(disconnected.flushed);
+    }
+
+}
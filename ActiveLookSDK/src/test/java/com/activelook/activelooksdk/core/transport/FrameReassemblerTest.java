@@ -0,0 +1,106 @@
+package com.activelook.activelooksdk.core.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FrameReassemblerTest {
+
+    private static byte[] frame(final int dataLength, final int seed) {
+        final boolean longFormat = dataLength + 5 > 0xFF;
+        final int length = dataLength + (longFormat ? 6 : 5);
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        bytes[offset++] = (byte) 0xFF;
+        bytes[offset++] = (byte) seed;
+        if (longFormat) {
+            bytes[offset++] = (byte) 0x10;
+            bytes[offset++] = (byte) (length >> 8);
+        } else {
+            bytes[offset++] = (byte) 0x00;
+        }
+        bytes[offset++] = (byte) length;
+        for (int i = 0; i < dataLength; i++) {
+            bytes[offset++] = (byte) (seed + i);
+        }
+        bytes[offset] = (byte) 0xAA;
+        return bytes;
+    }
+
+    @Test
+    public void frameSplitAcrossNotifications() {
+        final FrameReassembler reassembler = new FrameReassembler(16);
+        final byte[] frame = frame(512, 3);
+        for (int i = 0; i < frame.length; i += 20) {
+            assertNull(reassembler.nextFrame());
+            reassembler.append(Arrays.copyOfRange(frame, i, Math.min(frame.length, i + 20)));
+        }
+        assertArrayEquals(frame, reassembler.nextFrame());
+        assertNull(reassembler.nextFrame());
+    }
+
+    @Test
+    public void severalFramesInOneNotification() {
+        final FrameReassembler reassembler = new FrameReassembler(16);
+        final byte[] first = frame(0, 1);
+        final byte[] second = frame(10, 2);
+        final byte[] third = frame(4, 3);
+        final byte[] notification = new byte[first.length + second.length + 2];
+        System.arraycopy(first, 0, notification, 0, first.length);
+        System.arraycopy(second, 0, notification, first.length, second.length);
+        System.arraycopy(third, 0, notification, first.length + second.length, 2);
+        reassembler.append(notification);
+        assertArrayEquals(first, reassembler.nextFrame());
+        assertArrayEquals(second, reassembler.nextFrame());
+        assertNull(reassembler.nextFrame());
+        reassembler.append(Arrays.copyOfRange(third, 2, third.length));
+        assertArrayEquals(third, reassembler.nextFrame());
+    }
+
+    @Test
+    public void garbageIsSkipped() {
+        final FrameReassembler reassembler = new FrameReassembler();
+        final byte[] frame = frame(3, 7);
+        reassembler.append(new byte[] { 0x01, 0x02, (byte) 0xFF, 0x01, 0x00, 0x06, 0x00, 0x00 });
+        reassembler.append(frame);
+        assertArrayEquals(frame, reassembler.nextFrame());
+        assertEquals(8, reassembler.getSkippedBytes());
+    }
+
+    @Test
+    public void oversizedLengthIsSkippedWithoutWaitingForItsBytes() {
+        final FrameReassembler reassembler = new FrameReassembler();
+        final byte[] frame = frame(3, 7);
+        reassembler.append(new byte[] { (byte) 0xFF, 0x01, 0x10, (byte) 0xFF, (byte) 0xFF });
+        reassembler.append(frame);
+        assertArrayEquals(frame, reassembler.nextFrame());
+        assertEquals(5, reassembler.getSkippedBytes());
+    }
+
+    @Test
+    public void wellFormedOversizedFrameIsDroppedAndReported() {
+        final FrameReassembler reassembler = new FrameReassembler();
+        final List<byte[]> dropped = new ArrayList<>();
+        reassembler.setOnOversized(dropped::add);
+        final byte[] largest = frame(FrameReassembler.MAX_DATA_SIZE, 1);
+        final byte[] oversized = frame(FrameReassembler.MAX_DATA_SIZE + 1, 2);
+        final byte[] next = frame(3, 7);
+        reassembler.append(largest);
+        reassembler.append(oversized);
+        reassembler.append(next);
+        assertArrayEquals(largest, reassembler.nextFrame());
+        assertArrayEquals(next, reassembler.nextFrame());
+        assertNull(reassembler.nextFrame());
+        assertEquals(1, dropped.size());
+        assertArrayEquals(oversized, dropped.get(0));
+        assertEquals(1, reassembler.getOversizedFrames());
+        assertEquals(0, reassembler.getSkippedBytes());
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.CommandData;
+import com.activelook.activelooksdk.core.QueryId;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.types.CommandPriority;
+import com.activelook.activelooksdk.types.ConfigurationDescription;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class GlassesSimulatorTest {
+
+    private VirtualScheduler scheduler;
+    private GlassesSimulator simulator;
+    private TransportEngine engine;
+    private List<Command> responses;
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Before
+    public void connect() {
+        this.scheduler = new VirtualScheduler();
+        this.simulator = new GlassesSimulator(this.scheduler);
+        this.engine = new TransportEngine(this.simulator, this.scheduler);
+        this.responses = new ArrayList<>();
+        this.engine.setOnFrame(frame -> this.responses.add(new Command(frame)));
+        this.simulator.connect(this.engine);
+        this.scheduler.advance(100, TimeUnit.MILLISECONDS);
+    }
+
+    private void write(final byte commandId, final CommandData data, final byte queryId) {
+        final Command command = new Command(commandId, data);
+        if (queryId != 0) {
+            command.setQueryId(new byte[] { queryId });
+        }
+        this.engine.write(command.toBytes(), CommandPriority.INTERACTIVE, -1);
+    }
+
+    @Test
+    public void queriesAreAnswered() {
+        this.simulator.setBatteryLevel(42);
+        this.write((byte) 0x05, new CommandData(), (byte) 0x01);
+        this.write((byte) 0xD3, new CommandData(), (byte) 0x02);
+        this.scheduler.advance(1, TimeUnit.SECONDS);
+        assertEquals(2, this.responses.size());
+        assertEquals(new QueryId((byte) 0x01), this.responses.get(0).getQueryId());
+        assertEquals(42, CommandData.toBatteryLevel(this.responses.get(0).getData()));
+        final List<ConfigurationDescription> configurations =
+                CommandData.toConfigurationDescriptionList(this.responses.get(1).getData());
+        assertEquals(1, configurations.size());
+        assertEquals("ALooK", configurations.get(0).getName());
+    }
+
+    @Test
+    public void graphicsAreDrawnToTheFramebuffer() {
+        this.write((byte) 0x30, new CommandData((byte) 7), (byte) 0);
+        this.write((byte) 0x34, new CommandData().addInt16((short) 10, (short) 20, (short) 12, (short) 22), (byte) 0);
+        this.scheduler.advance(1, TimeUnit.SECONDS);
+        assertEquals(7, this.simulator.getPixel(11, 21));
+        assertEquals(0, this.simulator.getPixel(13, 21));
+        this.write((byte) 0x01, new CommandData(), (byte) 0);
+        this.scheduler.advance(1, TimeUnit.SECONDS);
+        assertEquals(0, this.simulator.getPixel(11, 21));
+    }
+
+    @Test
+    public void overloadIsThrottledByFlowControl() {
+        this.simulator.setRxBufferSize(512);
+        this.simulator.setProcessingCost(TimeUnit.MILLISECONDS.toNanos(2), 0);
+        this.engine.setWriteWithoutResponse(true);
+        for (int i = 0; i < 500; i++) {
+            this.write((byte) 0x31, new CommandData().addInt16((short) i, (short) 0), (byte) 0);
+        }
+        this.scheduler.advance(10, TimeUnit.SECONDS);
+        assertEquals(500, this.simulator.getProcessedCommands());
+        assertEquals(0, this.simulator.getOverflows());
+        assertTrue(this.simulator.getFlowControlStops() > 0);
+        assertEquals(0, this.simulator.getRxBufferUsed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void packetOverTheMtuIsRejected() {
+        this.simulator.setMtu(23);
+        this.simulator.write(new byte[21], false);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.types.ConnectionMetrics;
+import com.activelook.activelooksdk.types.Histogram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+public class LinkMetricsTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void latenciesAreBucketedByPowersOfTwo() {
+        assertEquals(0, LinkMetrics.bucket(MS / 2));
+        assertEquals(1, LinkMetrics.bucket(MS));
+        assertEquals(2, LinkMetrics.bucket(3 * MS));
+        assertEquals(LinkMetrics.HISTOGRAM_BUCKETS - 1, LinkMetrics.bucket(60000 * MS));
+        final LinkMetrics metrics = new LinkMetrics();
+        for (int i = 0; i < 9; i++) {
+            metrics.onWriteAcknowledged(3 * MS);
+        }
+        metrics.onWriteAcknowledged(100 * MS);
+        final Histogram latency = metrics.snapshot(0, 0, 0).getWriteLatency();
+        assertEquals(10, latency.getTotalCount());
+        assertEquals(9, latency.getCount(2));
+        assertEquals(4, latency.getPercentileUpperBoundMs(50));
+        assertEquals(128, latency.getPercentileUpperBoundMs(99));
+    }
+
+    @Test
+    public void flowControlStopsAreTimed() {
+        final LinkMetrics metrics = new LinkMetrics();
+        metrics.onFlowControlStop(0);
+        metrics.onFlowControlStop(5 * MS);
+        metrics.onFlowControlCanSend(10 * MS, false);
+        metrics.onFlowControlStop(20 * MS);
+        metrics.onFlowControlCanSend(2020 * MS, true);
+        metrics.onFlowControlStop(3000 * MS);
+        final ConnectionMetrics snapshot = metrics.snapshot(0, 0, 3005 * MS);
+        assertEquals(3, snapshot.getFlowControlStops());
+        assertEquals(1, snapshot.getFlowControlForcedResumes());
+        assertEquals(2015, snapshot.getFlowControlStoppedMs());
+    }
+
+    @Test
+    public void trafficAndQueuePeaksAreCounted() {
+        final LinkMetrics metrics = new LinkMetrics();
+        metrics.onPacketSent(20);
+        metrics.onPacketSent(5);
+        metrics.onPacketReceived(7);
+        metrics.onQueueDepth(100, 3);
+        metrics.onQueueDepth(40, 5);
+        metrics.onWriteRetry();
+        final ConnectionMetrics snapshot = metrics.snapshot(10, 1, 0);
+        assertEquals(25, snapshot.getBytesSent());
+        assertEquals(2, snapshot.getPacketsSent());
+        assertEquals(7, snapshot.getBytesReceived());
+        assertEquals(1, snapshot.getPacketsReceived());
+        assertEquals(10, snapshot.getQueueBytes());
+        assertEquals(100, snapshot.getPeakQueueBytes());
+        assertEquals(5, snapshot.getPeakQueueCommands());
+        assertEquals(1, snapshot.getWriteRetries());
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.CommandData;
+import com.activelook.activelooksdk.types.QueueFullPolicy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundQueueTest {
+
+    private static byte[] frame(final int length, final int seed) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] drain(final OutboundQueue queue, final int packetSize) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] packet = new byte[packetSize];
+        int length;
+        while ((length = queue.poll(packet, 0, packetSize)) > 0) {
+            out.write(packet, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void packetsAreFilledAcrossFrames() {
+        final OutboundQueue queue = new OutboundQueue(64);
+        queue.offer(frame(5, 0), 0, 5);
+        queue.offer(frame(7, 10), 0, 7);
+        queue.offer(frame(3, 20), 0, 3);
+        assertEquals(15, queue.size());
+        final byte[] packet = new byte[10];
+        assertEquals(10, queue.poll(packet, 0, 10));
+        assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 10, 11, 12, 13, 14 }, packet);
+        assertEquals(5, queue.poll(packet, 0, 10));
+        assertEquals(15, packet[0]);
+        assertEquals(22, packet[4]);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.poll(packet, 0, 10));
+    }
+
+    @Test
+    public void ringWrapsAndGrows() {
+        final OutboundQueue queue = new OutboundQueue(16);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final byte[] packet = new byte[6];
+        for (int i = 0; i < 50; i++) {
+            final byte[] bytes = frame(1 + i % 13, i);
+            expected.write(bytes, 0, bytes.length);
+            queue.offer(bytes, 0, bytes.length);
+            if (i % 3 == 0) {
+                actual.write(packet, 0, queue.poll(packet, 0, packet.length));
+            }
+        }
+        final byte[] rest = drain(queue, 4);
+        actual.write(rest, 0, rest.length);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void currentFrameRemainingTracksPartialFrames() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.offer(frame(10, 0), 0, 10);
+        queue.offer(frame(4, 0), 0, 4);
+        assertEquals(0, queue.getCurrentFrameRemaining());
+        final byte[] packet = new byte[6];
+        queue.poll(packet, 0, 6);
+        assertEquals(4, queue.getCurrentFrameRemaining());
+        assertEquals(4, queue.poll(packet, 0, queue.getCurrentFrameRemaining()));
+        assertEquals(0, queue.getCurrentFrameRemaining());
+        assertFalse(queue.isEmpty());
+    }
+
+    @Test
+    public void lastPendingFrameIsSupersededInPlace() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setCoalescing(true);
+        queue.offer(new byte[] { 2 }, 0, 1);
+        queue.offer(new byte[] { 1, 1 }, 0, 2, 7);
+        queue.offer(new byte[] { 3, 3 }, 0, 2, 7);
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getEnqueuedFrames());
+        assertArrayEquals(new byte[] { 2, 3, 3 }, drain(queue, 10));
+    }
+
+    @Test
+    public void supersedingFrameIsNotMovedAheadOfLaterFrames() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setCoalescing(true);
+        queue.offer(new byte[] { 1, 1 }, 0, 2, 7);
+        queue.offer(new byte[] { 2 }, 0, 1);
+        queue.offer(new byte[] { 3, 3 }, 0, 2, 7);
+        assertEquals(3, queue.size());
+        assertArrayEquals(new byte[] { 2, 3, 3 }, drain(queue, 10));
+    }
+
+    @Test
+    public void encodedFramesWrapAndSupersede() {
+        final OutboundQueue queue = new OutboundQueue(16);
+        queue.setCoalescing(true);
+        queue.offer(frame(11, 0), 0, 11);
+        assertEquals(11, drain(queue, 20).length);
+        final Command first = new Command((byte) 0x62, new CommandData((byte) 1, (byte) 1));
+        final Command second = new Command((byte) 0x62, new CommandData((byte) 2, (byte) 2));
+        queue.offer(first, 7);
+        queue.offer(second, 7);
+        assertEquals(7, queue.size());
+        assertArrayEquals(second.toBytes(), drain(queue, 20));
+    }
+
+    @Test
+    public void pendingFrameOfAnotherLengthIsSkipped() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setCoalescing(true);
+        queue.offer(new byte[] { 1, 1 }, 0, 2, 7);
+        queue.offer(new byte[] { 2 }, 0, 1, 8);
+        queue.offer(new byte[] { 3, 3, 3 }, 0, 3, 7);
+        assertEquals(4, queue.size());
+        assertArrayEquals(new byte[] { 2, 3, 3, 3 }, drain(queue, 10));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void partiallySentFrameIsNotSuperseded() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setCoalescing(true);
+        queue.offer(new byte[] { 1, 1, 1, 1 }, 0, 4, 7);
+        final byte[] packet = new byte[2];
+        queue.poll(packet, 0, 2);
+        queue.offer(new byte[] { 3, 3, 3, 3 }, 0, 4, 7);
+        assertArrayEquals(new byte[] { 1, 1, 3, 3, 3, 3 }, drain(queue, 10));
+    }
+
+    @Test
+    public void keyIsIgnoredWithoutCoalescing() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.offer(new byte[] { 1, 1 }, 0, 2, 7);
+        queue.offer(new byte[] { 3, 3 }, 0, 2, 7);
+        assertArrayEquals(new byte[] { 1, 1, 3, 3 }, drain(queue, 10));
+    }
+
+    @Test
+    public void fullQueueRejectsFrames() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setLimits(4, 2, QueueFullPolicy.REJECT);
+        assertTrue(queue.offer(frame(3, 0), 0, 3));
+        assertFalse(queue.offer(frame(2, 0), 0, 2));
+        assertTrue(queue.offer(frame(1, 0), 0, 1));
+        assertFalse(queue.offer(frame(0, 0), 0, 0));
+        assertEquals(2, queue.getFrameCount());
+        assertEquals(2, queue.getDroppedFrames());
+        drain(queue, 10);
+        assertTrue(queue.offer(frame(10, 0), 0, 10));
+    }
+
+    @Test
+    public void fullQueueDropsOldestPendingFrames() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setLimits(6, 10, QueueFullPolicy.DROP_OLDEST);
+        queue.offer(new byte[] { 1, 1, 1 }, 0, 3);
+        queue.offer(new byte[] { 2 }, 0, 1);
+        queue.offer(new byte[] { 3, 3 }, 0, 2);
+        final byte[] packet = new byte[1];
+        queue.poll(packet, 0, 1);
+        assertTrue(queue.offer(new byte[] { 4, 4, 4 }, 0, 3));
+        assertEquals(2, queue.getDroppedFrames());
+        assertArrayEquals(new byte[] { 1, 1, 4, 4, 4 }, drain(queue, 10));
+    }
+
+    @Test
+    public void fullQueueCoalescesKeyedFrames() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setLimits(100, 2, QueueFullPolicy.COALESCE);
+        queue.offer(new byte[] { 1, 1 }, 0, 2, 7);
+        queue.offer(new byte[] { 2, 2 }, 0, 2, 8);
+        assertTrue(queue.offer(new byte[] { 3, 3 }, 0, 2, 7));
+        assertFalse(queue.offer(new byte[] { 4, 4 }, 0, 2, 9));
+        assertArrayEquals(new byte[] { 2, 2, 3, 3 }, drain(queue, 10));
+    }
+
+    @Test
+    public void fullQueueBlocksUntilPolled() throws InterruptedException {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setLimits(4, 10, QueueFullPolicy.BLOCK);
+        queue.offer(frame(4, 0), 0, 4);
+        final CountDownLatch offered = new CountDownLatch(1);
+        final Thread producer = new Thread(() -> {
+            queue.offer(frame(4, 10), 0, 4);
+            offered.countDown();
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+        final byte[] packet = new byte[4];
+        assertEquals(4, queue.poll(packet, 0, 4));
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(frame(4, 10), drain(queue, 10));
+    }
+
+    @Test
+    public void blockedProducerGivesUpAfterTheTimeout() {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setLimits(4, 10, QueueFullPolicy.BLOCK);
+        queue.setBlockTimeout(50);
+        queue.offer(frame(4, 0), 0, 4);
+        assertFalse(queue.offer(frame(4, 10), 0, 4));
+        assertEquals(1, queue.getDroppedFrames());
+    }
+
+    @Test
+    public void closingTheQueueReleasesBlockedProducers() throws InterruptedException {
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setLimits(4, 10, QueueFullPolicy.BLOCK);
+        queue.offer(frame(4, 0), 0, 4);
+        final CountDownLatch rejected = new CountDownLatch(1);
+        final Thread producer = new Thread(() -> {
+            if (!queue.offer(frame(4, 10), 0, 4)) {
+                rejected.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(rejected.await(100, TimeUnit.MILLISECONDS));
+        queue.close();
+        assertTrue(rejected.await(1, TimeUnit.SECONDS));
+        assertFalse(queue.offer(frame(1, 0), 0, 1));
+    }
+
+    @Test
+    public void rejectedAndDroppedFramesAreHandedToTheListener() {
+        final ByteArrayOutputStream dropped = new ByteArrayOutputStream();
+        final OutboundQueue queue = new OutboundQueue();
+        queue.setOnDropped(bytes -> dropped.write(bytes, 0, bytes.length));
+        queue.setLimits(6, 10, QueueFullPolicy.DROP_OLDEST);
+        queue.offer(new byte[] { 1, 1, 1 }, 0, 3);
+        queue.offer(new byte[] { 2 }, 0, 1);
+        queue.offer(new byte[] { 3, 3 }, 0, 2);
+        final byte[] packet = new byte[1];
+        queue.poll(packet, 0, 1);
+        queue.offer(new byte[] { 4, 4, 4 }, 0, 3);
+        assertArrayEquals(new byte[] { 2, 3, 3 }, dropped.toByteArray());
+        dropped.reset();
+        queue.setLimits(6, 10, QueueFullPolicy.REJECT);
+        assertFalse(queue.offer(new byte[] { 5, 5, 5, 5 }, 0, 4));
+        assertArrayEquals(new byte[] { 5, 5, 5, 5 }, dropped.toByteArray());
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.core.SdkLog;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SerialExecutorTest {
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    @Test
+    public void tasksRunInOrderAndNeverConcurrently() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final SerialExecutor executor = new SerialExecutor(pool);
+        final List<Integer> order = new ArrayList<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            final int task = i;
+            executor.execute(() -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(task);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(0, overlaps.get());
+        assertEquals(1000, order.size());
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void drainYieldsToTheOtherUsersOfTheDelegate() {
+        final List<Runnable> delegated = new ArrayList<>();
+        final SerialExecutor first = new SerialExecutor(delegated::add);
+        final SerialExecutor second = new SerialExecutor(delegated::add);
+        final List<String> order = new ArrayList<>();
+        for (int i = 0; i < SerialExecutor.DRAIN_BATCH + 1; i++) {
+            first.execute(() -> order.add("first"));
+        }
+        second.execute(() -> order.add("second"));
+        delegated.remove(0).run();
+        delegated.remove(0).run();
+        assertEquals(SerialExecutor.DRAIN_BATCH + 1, order.size());
+        assertEquals("second", order.get(SerialExecutor.DRAIN_BATCH));
+        delegated.remove(0).run();
+        assertEquals("first", order.get(SerialExecutor.DRAIN_BATCH + 1));
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheNextOnes() {
+        final SerialExecutor executor = new SerialExecutor(Runnable::run);
+        final AtomicInteger ran = new AtomicInteger();
+        executor.execute(() -> {
+            throw new IllegalStateException("callback bug");
+        });
+        executor.execute(ran::incrementAndGet);
+        assertEquals(1, ran.get());
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.activelook.activelooksdk.core.transport;
+
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.types.CommandPriority;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransportEngineTest {
+
+    private static final class RecordingTransport implements Transport {
+
+        private final List<byte[]> packets = new ArrayList<>();
+        private int busyWrites;
+
+        @Override
+        public boolean write(final byte[] packet, final boolean withoutResponse) {
+            if (this.busyWrites > 0) {
+                this.busyWrites--;
+                return false;
+            }
+            this.packets.add(packet.clone());
+            return true;
+        }
+
+    }
+
+    @BeforeClass
+    public static void silenceLogs() {
+        SdkLog.setSink((level, tag, message, error) -> { });
+    }
+
+    private static byte[] bytes(final int length, final int value) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        int length = 0;
+        for (final byte[] part : parts) {
+            length += part.length;
+        }
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        for (final byte[] part : parts) {
+            System.arraycopy(part, 0, bytes, offset, part.length);
+            offset += part.length;
+        }
+        return bytes;
+    }
+
+    private static void acknowledge(final TransportEngine engine, final VirtualScheduler scheduler) {
+        engine.onWriteComplete();
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void packetsAreFilledUpToTheMtu() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        engine.setFixedWriteDelay(0);
+        engine.write(bytes(10, 1), CommandPriority.INTERACTIVE, -1);
+        engine.write(bytes(30, 2), CommandPriority.BULK, -1);
+        engine.write(bytes(5, 3), CommandPriority.INTERACTIVE, -1);
+        assertEquals(1, transport.packets.size());
+        assertArrayEquals(bytes(10, 1), transport.packets.get(0));
+        engine.onWriteComplete();
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(20, transport.packets.get(1).length);
+        assertEquals(3, transport.packets.get(1)[0]);
+        assertEquals(2, transport.packets.get(1)[5]);
+        engine.onWriteComplete();
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertArrayEquals(bytes(15, 2), transport.packets.get(2));
+        assertEquals(45, engine.getMetrics().getBytesSent());
+    }
+
+    @Test
+    public void frameIsSplitAcrossTwoPackets() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        engine.setFixedWriteDelay(0);
+        engine.write(bytes(30, 1), CommandPriority.INTERACTIVE, -1);
+        acknowledge(engine, scheduler);
+        assertEquals(2, transport.packets.size());
+        assertArrayEquals(bytes(20, 1), transport.packets.get(0));
+        assertArrayEquals(bytes(10, 1), transport.packets.get(1));
+    }
+
+    @Test
+    public void lanesInterleaveOnlyAtFrameBoundaries() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        engine.setFixedWriteDelay(0);
+        engine.write(bytes(30, 2), CommandPriority.BULK, -1);
+        engine.write(bytes(5, 1), CommandPriority.INTERACTIVE, -1);
+        engine.write(bytes(30, 3), CommandPriority.BULK, -1);
+        assertArrayEquals(bytes(20, 2), transport.packets.get(0));
+        acknowledge(engine, scheduler);
+        // The bulk frame in progress is completed before the interactive one
+        assertArrayEquals(concat(bytes(10, 2), bytes(5, 1), bytes(5, 3)), transport.packets.get(1));
+        engine.write(bytes(4, 4), CommandPriority.INTERACTIVE, -1);
+        acknowledge(engine, scheduler);
+        assertArrayEquals(bytes(20, 3), transport.packets.get(2));
+        acknowledge(engine, scheduler);
+        assertArrayEquals(concat(bytes(5, 3), bytes(4, 4)), transport.packets.get(3));
+        acknowledge(engine, scheduler);
+        assertEquals(4, transport.packets.size());
+    }
+
+    @Test
+    public void packetsAreFilledToExactlyTheMtuMinusTheAttHeader() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        engine.setFixedWriteDelay(0);
+        engine.onMtuChanged(100);
+        engine.write(bytes(97, 1), CommandPriority.INTERACTIVE, -1);
+        engine.write(bytes(50, 2), CommandPriority.BULK, -1);
+        engine.write(bytes(50, 3), CommandPriority.BULK, -1);
+        engine.write(bytes(50, 4), CommandPriority.BULK, -1);
+        acknowledge(engine, scheduler);
+        acknowledge(engine, scheduler);
+        acknowledge(engine, scheduler);
+        assertEquals(3, transport.packets.size());
+        assertArrayEquals(bytes(97, 1), transport.packets.get(0));
+        assertArrayEquals(concat(bytes(50, 2), bytes(47, 3)), transport.packets.get(1));
+        assertArrayEquals(concat(bytes(3, 3), bytes(50, 4)), transport.packets.get(2));
+    }
+
+    @Test
+    public void flowControlStopHoldsWritesUntilForcedResume() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        engine.setFixedWriteDelay(0);
+        engine.onFlowControl((byte) 0x02);
+        engine.write(bytes(4, 1), CommandPriority.INTERACTIVE, -1);
+        scheduler.advance(1999, TimeUnit.MILLISECONDS);
+        assertEquals(0, transport.packets.size());
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, transport.packets.size());
+        assertEquals(1, engine.getMetrics().getFlowControlForcedResumes());
+        assertEquals(2000, engine.getMetrics().getFlowControlStoppedMs());
+    }
+
+    @Test
+    public void busyWritesAreRetriedWithBackoff() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        transport.busyWrites = 3;
+        engine.write(bytes(4, 1), CommandPriority.INTERACTIVE, -1);
+        scheduler.advance(13, TimeUnit.MILLISECONDS);
+        assertEquals(0, transport.packets.size());
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, transport.packets.size());
+        assertEquals(3, engine.getWriteRetryCount());
+    }
+
+    @Test
+    public void busyWritesAreRetriedUntilTheyAreWritten() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        transport.busyWrites = 20;
+        engine.write(bytes(4, 1), CommandPriority.INTERACTIVE, -1);
+        // 2 + 4 + ... + 128 ms, then 256 ms for each of the 13 next retries
+        scheduler.advance(254 + 13 * 256 - 1, TimeUnit.MILLISECONDS);
+        assertEquals(0, transport.packets.size());
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, transport.packets.size());
+        assertEquals(20, engine.getWriteRetryCount());
+    }
+
+    @Test
+    public void busyWritesStopOnceTheEngineIsClosed() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        transport.busyWrites = Integer.MAX_VALUE;
+        engine.write(bytes(4, 1), CommandPriority.INTERACTIVE, -1);
+        scheduler.advance(1, TimeUnit.SECONDS);
+        engine.close();
+        final long retries = engine.getWriteRetryCount();
+        scheduler.advance(10, TimeUnit.SECONDS);
+        assertEquals(retries, engine.getWriteRetryCount());
+        assertEquals(0, transport.packets.size());
+    }
+
+    @Test
+    public void refusedWritesCloseTheEngine() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        final AtomicInteger failures = new AtomicInteger();
+        engine.setOnWriteFailed(failures::incrementAndGet);
+        transport.busyWrites = Integer.MAX_VALUE;
+        engine.write(bytes(4, 1), CommandPriority.INTERACTIVE, -1);
+        final CompletableFuture<Void> flush = engine.flushAsync(60000);
+        scheduler.advance(9, TimeUnit.SECONDS);
+        assertFalse(flush.isDone());
+        scheduler.advance(2, TimeUnit.SECONDS);
+        assertTrue(flush.isCompletedExceptionally());
+        assertEquals(1, failures.get());
+        final long retries = engine.getWriteRetryCount();
+        scheduler.advance(10, TimeUnit.SECONDS);
+        assertEquals(retries, engine.getWriteRetryCount());
+        engine.write(bytes(4, 2), CommandPriority.INTERACTIVE, -1);
+        assertEquals(1, engine.getOutboundQueueDepth().getDroppedCommands());
+    }
+
+    @Test
+    public void interactiveFlushDoesNotWaitForTheBulkQueue() {
+        final RecordingTransport transport = new RecordingTransport();
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final TransportEngine engine = new TransportEngine(transport, scheduler);
+        engine.setFixedWriteDelay(0);
+        engine.write(bytes(30, 1), CommandPriority.BULK, -1);
+        engine.write(bytes(30, 2), CommandPriority.BULK, -1);
+        engine.write(bytes(4, 3), CommandPriority.INTERACTIVE, -1);
+        final CompletableFuture<Void> interactive = engine.flushAsync(CommandPriority.INTERACTIVE, 5000);
+        final CompletableFuture<Void> all = engine.flushAsync(5000);
+        engine.onWriteComplete();
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertFalse(interactive.isDone());
+        engine.onWriteComplete();
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(interactive.isDone());
+        assertFalse(all.isDone());
+    }
+
+    @Test
+    public void framesAreReassembled() {
+        final TransportEngine engine = new TransportEngine(new RecordingTransport(), new VirtualScheduler());
+        final List<byte[]> frames = new ArrayList<>();
+        engine.setOnFrame(frames::add);
+        engine.onReceived(new byte[] { (byte) 0xFF, 0x01, 0x00, 0x06 });
+        engine.onReceived(new byte[] { 0x2A, (byte) 0xAA, (byte) 0xFF, 0x02, 0x00, 0x05, (byte) 0xAA });
+        assertEquals(2, frames.size());
+        assertEquals(0x2A, frames.get(0)[4]);
+        assertEquals(0x02, frames.get(1)[1]);
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.activelook.activelooksdk.core.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualSchedulerTest {
+
+    @Test
+    public void tasksRunInOrderWhenTheClockIsAdvanced() {
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final List<Integer> runs = new ArrayList<>();
+        scheduler.schedule(() -> runs.add(2), 20, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> runs.add(1), 10, TimeUnit.MILLISECONDS);
+        scheduler.execute(() -> runs.add(0));
+        scheduler.advance(15, TimeUnit.MILLISECONDS);
+        assertEquals(2, runs.size());
+        scheduler.advance(5, TimeUnit.MILLISECONDS);
+        assertEquals(3, runs.size());
+        assertEquals(0, (int) runs.get(0));
+        assertEquals(1, (int) runs.get(1));
+        assertEquals(2, (int) runs.get(2));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), scheduler.nanoTime());
+    }
+
+    @Test
+    public void cancelledPeriodicTaskStopsRunning() {
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final AtomicInteger runs = new AtomicInteger();
+        final Scheduler.Task task = scheduler.scheduleAtFixedRate(runs::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+        scheduler.advance(25, TimeUnit.MILLISECONDS);
+        task.cancel();
+        scheduler.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(2, runs.get());
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.activelook.activelooksdk.core.transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+public class WritePacingTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(15);
+
+    @Test
+    public void adaptiveDelayDecreasesToZero() {
+        final WritePacing pacing = new WritePacing();
+        long previous = pacing.getDelayUs();
+        for (int i = 0; i < 100; i++) {
+            final long delay = pacing.onWriteAcknowledged(LATENCY);
+            assertTrue(delay <= previous);
+            previous = delay;
+        }
+        assertEquals(0, previous);
+    }
+
+    @Test
+    public void adaptiveDelayGrowsOnStop() {
+        final WritePacing pacing = new WritePacing();
+        for (int i = 0; i < 100; i++) {
+            pacing.onWriteAcknowledged(LATENCY);
+        }
+        pacing.onFlowControlStop();
+        final long afterStop = pacing.getDelayUs();
+        assertTrue(afterStop > 0);
+        pacing.onFlowControlStop();
+        assertTrue(pacing.getDelayUs() > afterStop);
+    }
+
+    @Test
+    public void adaptiveDelayGrowsOnSlowAcknowledgements() {
+        final WritePacing pacing = new WritePacing();
+        for (int i = 0; i < 100; i++) {
+            pacing.onWriteAcknowledged(LATENCY);
+        }
+        long delay = 0;
+        for (int i = 0; i < 20; i++) {
+            delay = pacing.onWriteAcknowledged(LATENCY * 10);
+        }
+        assertTrue(delay > 0);
+    }
+
+    @Test
+    public void firstAcknowledgementsSeedTheBaseline() {
+        final WritePacing pacing = new WritePacing();
+        pacing.setAdaptive();
+        assertEquals(18750, pacing.onWriteAcknowledged(LATENCY / 2));
+        assertEquals(14063, pacing.onWriteAcknowledged(LATENCY / 2));
+    }
+
+    @Test
+    public void slowAcknowledgementsAfterAFastOneAreCongestion() {
+        final WritePacing pacing = new WritePacing();
+        pacing.setAdaptive();
+        long previous = pacing.onWriteAcknowledged(LATENCY / 2);
+        boolean grew = false;
+        for (int i = 0; i < 4 && !grew; i++) {
+            final long delay = pacing.onWriteAcknowledged(LATENCY * 4);
+            grew = delay > previous;
+            previous = delay;
+        }
+        assertTrue(grew);
+    }
+
+    @Test
+    public void fixedDelayIsConstant() {
+        final WritePacing pacing = new WritePacing();
+        pacing.setFixedDelay(WritePacing.DEFAULT_FIXED_DELAY_MS);
+        pacing.onFlowControlStop();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(25000, pacing.onWriteAcknowledged(LATENCY));
+        }
+        pacing.setAdaptive();
+        assertTrue(pacing.isAdaptive());
+    }
+
+}
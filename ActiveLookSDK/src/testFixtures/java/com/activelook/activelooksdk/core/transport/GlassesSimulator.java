@@ -0,0 +1,425 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import androidx.core.util.Consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated glasses firmware, to exercise the transport engine on the JVM without hardware.
+ * Packets are delivered at the connection events of the link, the frames are parsed from a finite RX buffer and
+ * executed at a fixed cost per command and per byte. The firmware notifies STOP SEND when its RX buffer gets above
+ * three quarters, CAN SEND when it gets back below a quarter, and OVERFLOW when a packet does not fit and is dropped.
+ * It answers the battery, vers, imgList and cfgList queries and draws the basic graphics commands to a framebuffer.
+ * All the events run on the given scheduler, so the simulation is deterministic on a virtual clock.
+ * A packet longer than the MTU allows is a bug of the engine: it is rejected with an exception.
+ * This is a test fixture, shared by the unit tests and the benchmarks, it is not part of the SDK.
+ */
+public final class GlassesSimulator implements Transport {
+
+    public static final int WIDTH = 304;
+    public static final int HEIGHT = 256;
+    private static final byte ID_CLEAR = (byte) 0x01;
+    private static final byte ID_BATTERY = (byte) 0x05;
+    private static final byte ID_VERS = (byte) 0x06;
+    private static final byte ID_COLOR = (byte) 0x30;
+    private static final byte ID_POINT = (byte) 0x31;
+    private static final byte ID_LINE = (byte) 0x32;
+    private static final byte ID_RECT = (byte) 0x33;
+    private static final byte ID_RECTF = (byte) 0x34;
+    private static final byte ID_IMG_LIST = (byte) 0x47;
+    private static final byte ID_CFG_LIST = (byte) 0xD3;
+    private static final byte FLOW_CONTROL_CAN_SEND = (byte) 0x01;
+    private static final byte FLOW_CONTROL_STOP = (byte) 0x02;
+    private static final byte FLOW_CONTROL_OVERFLOW = (byte) 0x04;
+    private static final int ATT_HEADER_SIZE = 3;
+
+    private final Scheduler scheduler;
+    private final FrameReassembler rxFrames = new FrameReassembler();
+    private final byte[] framebuffer = new byte[WIDTH * HEIGHT];
+    private final List<byte[]> images = new ArrayList<>();
+    private final List<byte[]> configurations = new ArrayList<>();
+    private Listener listener;
+    private Consumer<byte[]> onCommandExecuted;
+    private int mtu = 247;
+    private long connectionIntervalNs = TimeUnit.MICROSECONDS.toNanos(15000);
+    private int rxBufferSize = 2048;
+    private long commandCostNs = TimeUnit.MICROSECONDS.toNanos(100);
+    private long byteCostNs = 2000;
+    private int batteryLevel = 100;
+    private byte[] version = { 4, 6, 0, 'b', 22, 10, 0, 0, 1 };
+    private byte color = 15;
+    private boolean writing;
+    private boolean processing;
+    private boolean stopped;
+    private int rxBufferUsed;
+    private long skippedBytes;
+    private long receivedPackets;
+    private long processedCommands;
+    private long overflows;
+    private long flowControlStops;
+
+    public GlassesSimulator(final Scheduler scheduler) {
+        super();
+        this.scheduler = scheduler;
+        this.addConfiguration("ALooK", 71568, 11, true);
+    }
+
+    /**
+     * Connect the simulated glasses, the MTU is reported to the listener at the first connection event.
+     *
+     * @param listener The listener of the link events, usually the transport engine.
+     */
+    public void connect(final Listener listener) {
+        this.listener = listener;
+        this.scheduler.schedule(() -> listener.onMtuChanged(this.mtu), this.untilConnectionEvent(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void setMtu(final int mtu) {
+        this.mtu = mtu;
+    }
+
+    public synchronized void setConnectionInterval(final long interval, final TimeUnit unit) {
+        this.connectionIntervalNs = unit.toNanos(interval);
+    }
+
+    public synchronized void setRxBufferSize(final int size) {
+        this.rxBufferSize = size;
+    }
+
+    /**
+     * Set the time the firmware takes to execute a command.
+     *
+     * @param commandCostNs The fixed cost of a command, in nanoseconds.
+     * @param byteCostNs    The cost of each byte of the frame, in nanoseconds.
+     */
+    public synchronized void setProcessingCost(final long commandCostNs, final long byteCostNs) {
+        this.commandCostNs = commandCostNs;
+        this.byteCostNs = byteCostNs;
+    }
+
+    public synchronized void setBatteryLevel(final int level) {
+        this.batteryLevel = level;
+    }
+
+    public synchronized void addImage(final int id, final int width, final int height) {
+        this.images.add(new byte[] {
+                (byte) id, (byte) (width >> 8), (byte) width, (byte) (height >> 8), (byte) height
+        });
+    }
+
+    public synchronized void addConfiguration(final String name, final long size, final long version,
+            final boolean system) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        final byte[] entry = Arrays.copyOf(nameBytes, nameBytes.length + 12);
+        int i = nameBytes.length + 1;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            entry[i] = (byte) (size >> shift);
+            entry[i + 4] = (byte) (version >> shift);
+            i++;
+        }
+        entry[entry.length - 1] = (byte) (system ? 1 : 0);
+        this.configurations.add(entry);
+    }
+
+    /**
+     * Set a listener of the frames executed by the firmware, called on the scheduler.
+     *
+     * @param onCommandExecuted The listener of the executed frames.
+     */
+    public synchronized void setOnCommandExecuted(final Consumer<byte[]> onCommandExecuted) {
+        this.onCommandExecuted = onCommandExecuted;
+    }
+
+    public synchronized int getPixel(final int x, final int y) {
+        return this.framebuffer[y * WIDTH + x];
+    }
+
+    public synchronized byte[] getFramebuffer() {
+        return this.framebuffer.clone();
+    }
+
+    public synchronized int getRxBufferUsed() {
+        return this.rxBufferUsed;
+    }
+
+    public synchronized long getReceivedPackets() {
+        return this.receivedPackets;
+    }
+
+    public synchronized long getProcessedCommands() {
+        return this.processedCommands;
+    }
+
+    public synchronized long getOverflows() {
+        return this.overflows;
+    }
+
+    public synchronized long getFlowControlStops() {
+        return this.flowControlStops;
+    }
+
+    /*
+    Link
+     */
+
+    @Override
+    public boolean write(final byte[] packet, final boolean withoutResponse) {
+        synchronized (this) {
+            if (packet.length > this.mtu - ATT_HEADER_SIZE) {
+                throw new IllegalArgumentException(String.format("Packet of %d bytes written over an MTU of %d",
+                        packet.length, this.mtu));
+            }
+            if (this.writing) {
+                return false;
+            }
+            this.writing = true;
+        }
+        // The engine may reuse its packet buffer once the write is accepted
+        final byte[] value = packet.clone();
+        this.scheduler.schedule(() -> this.deliver(value, withoutResponse), this.untilConnectionEvent(),
+                TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    private synchronized long untilConnectionEvent() {
+        return this.connectionIntervalNs - this.scheduler.nanoTime() % this.connectionIntervalNs;
+    }
+
+    private void deliver(final byte[] packet, final boolean withoutResponse) {
+        final boolean overflow;
+        final boolean stop;
+        final boolean process;
+        synchronized (this) {
+            this.receivedPackets++;
+            overflow = this.rxBufferUsed + packet.length > this.rxBufferSize;
+            if (overflow) {
+                this.overflows++;
+            } else {
+                this.rxFrames.append(packet);
+                this.rxBufferUsed += packet.length;
+            }
+            stop = !this.stopped && this.rxBufferUsed >= this.rxBufferSize * 3 / 4;
+            if (stop) {
+                this.stopped = true;
+                this.flowControlStops++;
+            }
+            process = !overflow && !this.processing;
+            this.processing |= process;
+        }
+        if (overflow) {
+            this.listener.onFlowControl(FLOW_CONTROL_OVERFLOW);
+        }
+        if (stop) {
+            this.listener.onFlowControl(FLOW_CONTROL_STOP);
+        }
+        if (process) {
+            this.scheduler.execute(this::processNext);
+        }
+        if (withoutResponse) {
+            this.completeWrite();
+        } else {
+            this.scheduler.schedule(this::completeWrite, this.untilConnectionEvent(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void completeWrite() {
+        synchronized (this) {
+            this.writing = false;
+        }
+        this.listener.onWriteComplete();
+    }
+
+    private void notifyAtConnectionEvent(final byte[] frame) {
+        final int packetSize;
+        synchronized (this) {
+            packetSize = this.mtu - 3;
+        }
+        final long delay = this.untilConnectionEvent();
+        for (int offset = 0; offset < frame.length; offset += packetSize) {
+            final byte[] value = Arrays.copyOfRange(frame, offset, Math.min(frame.length, offset + packetSize));
+            this.scheduler.schedule(() -> this.listener.onReceived(value), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /*
+    Firmware
+     */
+
+    private void processNext() {
+        final byte[] frame;
+        final long cost;
+        synchronized (this) {
+            frame = this.rxFrames.nextFrame();
+            final long skipped = this.rxFrames.getSkippedBytes();
+            this.rxBufferUsed -= (int) (skipped - this.skippedBytes);
+            this.skippedBytes = skipped;
+            if (frame == null) {
+                this.processing = false;
+                return;
+            }
+            cost = this.commandCostNs + this.byteCostNs * frame.length;
+        }
+        this.scheduler.schedule(() -> this.execute(frame), cost, TimeUnit.NANOSECONDS);
+    }
+
+    private void execute(final byte[] frame) {
+        final byte[] response;
+        final boolean canSend;
+        final Consumer<byte[]> onExecuted;
+        synchronized (this) {
+            onExecuted = this.onCommandExecuted;
+            this.rxBufferUsed -= frame.length;
+            this.processedCommands++;
+            response = this.apply(frame);
+            canSend = this.stopped && this.rxBufferUsed <= this.rxBufferSize / 4;
+            if (canSend) {
+                this.stopped = false;
+            }
+        }
+        if (onExecuted != null) {
+            onExecuted.accept(frame);
+        }
+        if (response != null) {
+            this.notifyAtConnectionEvent(response);
+        }
+        if (canSend) {
+            this.scheduler.schedule(() -> this.listener.onFlowControl(FLOW_CONTROL_CAN_SEND),
+                    this.untilConnectionEvent(), TimeUnit.NANOSECONDS);
+        }
+        this.processNext();
+    }
+
+    private byte[] apply(final byte[] frame) {
+        final int queryIdLength = frame[2] & 0x0F;
+        final int offset = ((frame[2] & 0x10) == 0x10 ? 5 : 4) + queryIdLength;
+        final byte[] queryId = Arrays.copyOfRange(frame, offset - queryIdLength, offset);
+        switch (frame[1]) {
+            case ID_CLEAR:
+                Arrays.fill(this.framebuffer, (byte) 0);
+                return null;
+            case ID_COLOR:
+                this.color = (byte) (frame[offset] & 0x0F);
+                return null;
+            case ID_POINT:
+                this.plot(readInt16(frame, offset), readInt16(frame, offset + 2));
+                return null;
+            case ID_LINE:
+                this.line(readInt16(frame, offset), readInt16(frame, offset + 2), readInt16(frame, offset + 4),
+                        readInt16(frame, offset + 6));
+                return null;
+            case ID_RECT:
+            case ID_RECTF:
+                this.rect(readInt16(frame, offset), readInt16(frame, offset + 2), readInt16(frame, offset + 4),
+                        readInt16(frame, offset + 6), frame[1] == ID_RECTF);
+                return null;
+            case ID_BATTERY:
+                return response(frame[1], queryId, new byte[] { (byte) this.batteryLevel });
+            case ID_VERS:
+                return response(frame[1], queryId, this.version);
+            case ID_IMG_LIST:
+                return response(frame[1], queryId, concat(this.images));
+            case ID_CFG_LIST:
+                return response(frame[1], queryId, concat(this.configurations));
+            default:
+                return null;
+        }
+    }
+
+    private void plot(final int x, final int y) {
+        if (0 <= x && x < WIDTH && 0 <= y && y < HEIGHT) {
+            this.framebuffer[y * WIDTH + x] = this.color;
+        }
+    }
+
+    private void line(int x1, int y1, final int x2, final int y2) {
+        final int dx = Math.abs(x2 - x1);
+        final int dy = -Math.abs(y2 - y1);
+        final int sx = x1 < x2 ? 1 : -1;
+        final int sy = y1 < y2 ? 1 : -1;
+        int error = dx + dy;
+        while (true) {
+            this.plot(x1, y1);
+            if (x1 == x2 && y1 == y2) {
+                return;
+            }
+            final int e2 = 2 * error;
+            if (e2 >= dy) {
+                error += dy;
+                x1 += sx;
+            }
+            if (e2 <= dx) {
+                error += dx;
+                y1 += sy;
+            }
+        }
+    }
+
+    private void rect(final int x1, final int y1, final int x2, final int y2, final boolean filled) {
+        for (int y = Math.min(y1, y2); y <= Math.max(y1, y2); y++) {
+            for (int x = Math.min(x1, x2); x <= Math.max(x1, x2); x++) {
+                if (filled || y == y1 || y == y2 || x == x1 || x == x2) {
+                    this.plot(x, y);
+                }
+            }
+        }
+    }
+
+    private static int readInt16(final byte[] bytes, final int offset) {
+        return (short) (((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF));
+    }
+
+    private static byte[] concat(final List<byte[]> entries) {
+        int length = 0;
+        for (final byte[] entry : entries) {
+            length += entry.length;
+        }
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        for (final byte[] entry : entries) {
+            System.arraycopy(entry, 0, bytes, offset, entry.length);
+            offset += entry.length;
+        }
+        return bytes;
+    }
+
+    private static byte[] response(final byte commandId, final byte[] queryId, final byte[] data) {
+        int length = 5 + queryId.length + data.length;
+        final boolean longFormat = length > 0xFF;
+        if (longFormat) {
+            length++;
+        }
+        final byte[] frame = new byte[length];
+        frame[0] = (byte) 0xFF;
+        frame[1] = commandId;
+        frame[2] = (byte) ((longFormat ? 0x10 : 0x00) | queryId.length);
+        int offset = 3;
+        if (longFormat) {
+            frame[offset++] = (byte) (length >> 8);
+        }
+        frame[offset++] = (byte) length;
+        System.arraycopy(queryId, 0, frame, offset, queryId.length);
+        System.arraycopy(data, 0, frame, offset + queryId.length, data.length);
+        frame[length - 1] = (byte) 0xAA;
+        return frame;
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.transport;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler on a virtual clock, the tasks only run when the clock is advanced.
+ * Used with the glasses simulator to run the transport deterministically, in tests and benchmarks. The scheduler
+ * is not thread safe, the clock must be advanced from the thread using the transport.
+ * This is a test fixture, shared by the unit tests and the benchmarks, it is not part of the SDK.
+ */
+public final class VirtualScheduler implements Scheduler {
+
+    /*
+    A periodic entry is queued again after each run, so that its handle stays valid
+     */
+    private static final class Entry implements Comparable<Entry>, Task {
+
+        private long time;
+        private long sequence;
+        private final Runnable command;
+        private final long period;
+        private boolean cancelled;
+
+        private Entry(final long time, final long sequence, final Runnable command, final long period) {
+            this.time = time;
+            this.sequence = sequence;
+            this.command = command;
+            this.period = period;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            final int byTime = Long.compare(this.time, other.time);
+            return byTime != 0 ? byTime : Long.compare(this.sequence, other.sequence);
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+    }
+
+    private final PriorityQueue<Entry> tasks = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+
+    @Override
+    public long nanoTime() {
+        return this.now;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        this.schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Task schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        final Entry entry = new Entry(this.now + unit.toNanos(delay), this.sequence++, command, 0);
+        this.tasks.add(entry);
+        return entry;
+    }
+
+    @Override
+    public Task scheduleAtFixedRate(final Runnable command, final long period, final TimeUnit unit) {
+        final Entry entry = new Entry(this.now + unit.toNanos(period), this.sequence++, command, unit.toNanos(period));
+        this.tasks.add(entry);
+        return entry;
+    }
+
+    /**
+     * Run the tasks due within the given delay, moving the clock along.
+     *
+     * @param delay The delay to advance the clock by.
+     * @param unit  The unit of the delay.
+     */
+    public void advance(final long delay, final TimeUnit unit) {
+        final long end = this.now + unit.toNanos(delay);
+        Entry entry;
+        while ((entry = this.tasks.peek()) != null && entry.time <= end) {
+            this.tasks.poll();
+            if (entry.cancelled) {
+                continue;
+            }
+            this.now = entry.time;
+            entry.command.run();
+            if (entry.period > 0 && !entry.cancelled) {
+                entry.time += entry.period;
+                entry.sequence = this.sequence++;
+                this.tasks.add(entry);
+            }
+        }
+        this.now = end;
+    }
+
+}
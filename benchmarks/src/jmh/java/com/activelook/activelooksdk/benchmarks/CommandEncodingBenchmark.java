@@ -0,0 +1,152 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.benchmarks;
+
+import com.activelook.activelooksdk.CommandTemplate;
+import com.activelook.activelooksdk.Glasses;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.core.debug.RecordingGlasses;
+import com.activelook.activelooksdk.types.DemoPattern;
+import com.activelook.activelooksdk.types.GaugeInfo;
+import com.activelook.activelooksdk.types.Image1bppData;
+import com.activelook.activelooksdk.types.ImageData;
+import com.activelook.activelooksdk.types.LayoutParameters;
+import com.activelook.activelooksdk.types.LedState;
+import com.activelook.activelooksdk.types.PageInfo;
+import com.activelook.activelooksdk.types.Rotation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the commands written by the glasses, from the public API call to the bytes handed to the link.
+ * Queries are left out, their callbacks would pile up without responses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandEncodingBenchmark {
+
+    @Param({
+            "power", "clear", "grey", "demo", "test", "led", "shift", "luma", "sensor", "gesture", "als",
+            "color", "point", "line", "rect", "rectf", "circ", "circf", "txt", "polyline", "imgDisplay",
+            "imgDisplayTemplate", "imgDelete", "imgSave", "imgStream", "imgSave1bpp", "fontSelect",
+            "fontDelete", "layoutSave", "layoutDelete", "layoutDisplay", "layoutDisplayTemplate", "layoutClear",
+            "layoutPosition", "layoutDisplayExtended", "gaugeDisplay", "gaugeDisplayTemplate", "gaugeSave",
+            "gaugeDelete", "pageSave", "pageDelete", "pageDisplay", "pageClear", "cfgWrite", "cfgSet",
+            "cfgRename", "cfgDelete", "cfgDeleteLessUsed", "resetChargingParam", "shutdown"
+    })
+    public String command;
+
+    private Runnable encode;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        SdkLog.setSink((level, tag, message, error) -> { });
+        final Glasses glasses = new RecordingGlasses(blackhole);
+        final byte[] image = new byte[1024];
+        final LayoutParameters layout = new LayoutParameters((byte) 10, (short) 0, (byte) 0, (short) 304, (byte) 64,
+                (byte) 15, (byte) 0, (byte) 1, true, (short) 300, (byte) 60, Rotation.TOP_LR, true)
+                .addSubCommandRect((short) 0, (short) 0, (short) 100, (short) 40)
+                .addSubCommandText((short) 10, (short) 10, "Speed");
+        final GaugeInfo gauge = new GaugeInfo((short) 152, (short) 128, 100, 80, (short) 1, (short) 15, true);
+        final PageInfo page = new PageInfo((byte) 1, new byte[] { 10, 11, 12 },
+                new short[] { 0, 0, 0 }, new byte[] { 0, 64, 127 });
+        final short[] points = { 0, 0, 50, 50, 100, 0, 150, 50, 200, 0 };
+        this.encode = this.select(glasses, image, layout, gauge, page, points);
+    }
+
+    private Runnable select(final Glasses g, final byte[] image, final LayoutParameters layout, final GaugeInfo gauge,
+            final PageInfo page, final short[] points) {
+        switch (this.command) {
+            case "power": return () -> g.power(true);
+            case "clear": return g::clear;
+            case "grey": return () -> g.grey((byte) 7);
+            case "demo": return () -> g.demo(DemoPattern.CROSS);
+            case "test": return () -> g.test(DemoPattern.FILL);
+            case "led": return () -> g.led(LedState.BLINK);
+            case "shift": return () -> g.shift((short) 10, (short) -10);
+            case "luma": return () -> g.luma((byte) 12);
+            case "sensor": return () -> g.sensor(true);
+            case "gesture": return () -> g.gesture(true);
+            case "als": return () -> g.als(true);
+            case "color": return () -> g.color((byte) 15);
+            case "point": return () -> g.point((short) 100, (short) 100);
+            case "line": return () -> g.line((short) 0, (short) 0, (short) 303, (short) 255);
+            case "rect": return () -> g.rect((short) 10, (short) 10, (short) 100, (short) 100);
+            case "rectf": return () -> g.rectf((short) 10, (short) 10, (short) 100, (short) 100);
+            case "circ": return () -> g.circ((short) 152, (short) 128, (byte) 50);
+            case "circf": return () -> g.circf((short) 152, (short) 128, (byte) 50);
+            case "txt": return () -> g.txt((short) 250, (short) 100, Rotation.TOP_LR, (byte) 2, (byte) 15, "12.5 km/h");
+            case "polyline": return () -> g.polyline(points);
+            case "imgDisplay": return () -> g.imgDisplay((byte) 1, (short) 0, (short) 0);
+            case "imgDisplayTemplate": {
+                final CommandTemplate template = g.imgDisplayTemplate((byte) 1);
+                return () -> template.setPosition((short) 10, (short) 20).send();
+            }
+            case "imgDelete": return () -> g.imgDelete((byte) 1);
+            case "imgSave": return () -> g.imgSave((byte) 1, new ImageData((char) 64, image));
+            case "imgStream": return () -> g.imgStream(new Image1bppData((char) 64, image), (short) 0, (short) 0);
+            case "imgSave1bpp": return () -> g.imgSave1bpp((byte) 1, new Image1bppData((char) 64, image));
+            case "fontSelect": return () -> g.fontSelect((byte) 2);
+            case "fontDelete": return () -> g.fontDelete((byte) 2);
+            case "layoutSave": return () -> g.layoutSave(layout);
+            case "layoutDelete": return () -> g.layoutDelete((byte) 10);
+            case "layoutDisplay": return () -> g.layoutDisplay((byte) 10, "42");
+            case "layoutDisplayTemplate": {
+                final CommandTemplate template = g.layoutDisplayTemplate((byte) 10, 2);
+                return () -> template.setText("42").send();
+            }
+            case "layoutClear": return () -> g.layoutClear((byte) 10);
+            case "layoutPosition": return () -> g.layoutPosition((byte) 10, (short) 20, (byte) 30);
+            case "layoutDisplayExtended":
+                return () -> g.layoutDisplayExtended((byte) 10, (short) 20, (byte) 30, "42");
+            case "gaugeDisplay": return () -> g.gaugeDisplay((byte) 1, (byte) 50);
+            case "gaugeDisplayTemplate": {
+                final CommandTemplate template = g.gaugeDisplayTemplate((byte) 1);
+                return () -> template.setValue((byte) 50).send();
+            }
+            case "gaugeSave": return () -> g.gaugeSave((byte) 1, gauge);
+            case "gaugeDelete": return () -> g.gaugeDelete((byte) 1);
+            case "pageSave": return () -> g.pageSave(page);
+            case "pageDelete": return () -> g.pageDelete((byte) 1);
+            case "pageDisplay": return () -> g.pageDisplay((byte) 1, new String[] { "12", "34", "56" });
+            case "pageClear": return () -> g.pageClear((byte) 1);
+            case "cfgWrite": return () -> g.cfgWrite("DemoApp", 1, 0x12345678);
+            case "cfgSet": return () -> g.cfgSet("DemoApp");
+            case "cfgRename": return () -> g.cfgRename("DemoApp", "DemoApp2", 0x12345678);
+            case "cfgDelete": return () -> g.cfgDelete("DemoApp");
+            case "cfgDeleteLessUsed": return g::cfgDeleteLessUsed;
+            case "resetChargingParam": return g::resetChargingParam;
+            case "shutdown": return g::shutdown;
+            default: throw new IllegalArgumentException(this.command);
+        }
+    }
+
+    @Benchmark
+    public void encode() {
+        this.encode.run();
+    }
+
+}
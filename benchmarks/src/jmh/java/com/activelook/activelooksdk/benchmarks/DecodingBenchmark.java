@@ -0,0 +1,79 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.benchmarks;
+
+import com.activelook.activelooksdk.core.CommandData;
+import com.activelook.activelooksdk.types.ConfigurationDescription;
+import com.activelook.activelooksdk.types.GlassesVersion;
+import com.activelook.activelooksdk.types.ImageInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the query responses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodingBenchmark {
+
+    private byte[] imageList;
+    private byte[] configurationList;
+    private byte[] version;
+
+    @Setup
+    public void setup() {
+        this.imageList = new byte[32 * 5];
+        for (int i = 0; i < 32; i++) {
+            this.imageList[i * 5] = (byte) i;
+            this.imageList[i * 5 + 2] = (byte) (16 + i);
+            this.imageList[i * 5 + 4] = (byte) (32 + i);
+        }
+        final String[] names = { "ALooK", "DemoApp", "Cycling", "Running", "Hiking", "Skiing", "Navigation", "Notify" };
+        final CommandData configurations = new CommandData();
+        for (int i = 0; i < names.length; i++) {
+            configurations.add(names[i].getBytes(StandardCharsets.US_ASCII)).addUInt8((byte) 0)
+                    .addUInt32(1000 * i, i).addUInt8((byte) i, (byte) 1, (byte) (i == 0 ? 1 : 0));
+        }
+        this.configurationList = configurations.getBytes();
+        this.version = new byte[] { 4, 6, 0, 'b', 22, 10, 0, 0, 1 };
+    }
+
+    @Benchmark
+    public List<ImageInfo> imageInfoList() {
+        return CommandData.toImageInfoList(this.imageList);
+    }
+
+    @Benchmark
+    public List<ConfigurationDescription> configurationDescriptionList() {
+        return CommandData.toConfigurationDescriptionList(this.configurationList);
+    }
+
+    @Benchmark
+    public GlassesVersion glassesVersion() {
+        return CommandData.toGlassesVersion(this.version);
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.benchmarks;
+
+import com.activelook.activelooksdk.types.LayoutParameters;
+import com.activelook.activelooksdk.types.Rotation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a layout with many sub commands and encoding it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LayoutBenchmark {
+
+    @Param({ "4", "32" })
+    public int subCommands;
+
+    @Benchmark
+    public byte[] buildAndEncode() {
+        final LayoutParameters layout = new LayoutParameters((byte) 10, (short) 0, (byte) 0, (short) 304, (byte) 64,
+                (byte) 15, (byte) 0, (byte) 1, true, (short) 300, (byte) 60, Rotation.TOP_LR, true);
+        for (short i = 0; i < this.subCommands; i++) {
+            switch (i % 4) {
+                case 0:
+                    layout.addSubCommandColor((byte) (i % 16));
+                    break;
+                case 1:
+                    layout.addSubCommandRect(i, i, (short) (i + 10), (short) (i + 10));
+                    break;
+                case 2:
+                    layout.addSubCommandLine(i, (short) 0, i, (short) 63);
+                    break;
+                default:
+                    layout.addSubCommandText(i, (short) 10, "km/h");
+                    break;
+            }
+        }
+        return layout.toBytes();
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.benchmarks;
+
+import androidx.core.util.Consumer;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.core.debug.RecordingGlasses;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a query through the glasses: query id allocation, callback registration and response routing.
+ * The responses are parsed once in the setup, so that only the SDK bookkeeping is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryBenchmark {
+
+    private RecordingGlasses glasses;
+    private Command[] responses;
+    private Consumer<Integer> onResult;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        SdkLog.setSink((level, tag, message, error) -> { });
+        this.glasses = new RecordingGlasses(blackhole);
+        this.responses = new Command[256];
+        for (int i = 0; i < this.responses.length; i++) {
+            this.responses[i] = new Command(new byte[] { (byte) 0xFF, 0x05, 0x01, 0x07, (byte) i, 80, (byte) 0xAA });
+        }
+        this.onResult = blackhole::consume;
+    }
+
+    @Benchmark
+    public void battery() {
+        this.glasses.battery(this.onResult);
+        this.glasses.respond(this.responses[this.glasses.getLastQueryId()]);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.benchmarks;
+
+import com.activelook.activelooksdk.types.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunking of the image and font data before they are streamed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SplitBenchmark {
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    @Param({ "20", "240" })
+    public int chunkSize;
+
+    private byte[] source;
+
+    @Setup
+    public void setup() {
+        this.source = new byte[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.source[i] = (byte) i;
+        }
+    }
+
+    @Benchmark
+    public byte[][] split() {
+        return Utils.split(this.source, this.chunkSize);
+    }
+
+}
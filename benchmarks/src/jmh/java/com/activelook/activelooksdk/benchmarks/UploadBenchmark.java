@@ -0,0 +1,225 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.benchmarks;
+
+import com.activelook.activelooksdk.Glasses;
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.CommandData;
+import com.activelook.activelooksdk.core.SdkLog;
+import com.activelook.activelooksdk.core.debug.EngineGlasses;
+import com.activelook.activelooksdk.core.transport.GlassesSimulator;
+import com.activelook.activelooksdk.core.transport.TransportEngine;
+import com.activelook.activelooksdk.core.transport.VirtualScheduler;
+import com.activelook.activelooksdk.types.FontData;
+import com.activelook.activelooksdk.types.Image1bppData;
+import com.activelook.activelooksdk.types.ImageData;
+import com.activelook.activelooksdk.types.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end upload benchmark: the glasses, the transport engine and the glasses simulator run on a virtual clock,
+ * so the timings only depend on the modelled link and firmware and are reproducible.
+ * For each upload, MTU, connection interval and write type, it reports the time until the firmware executed the first
+ * data chunk, the time until it executed the last command and the effective throughput of the uploaded data.
+ * The results are printed and written as JSON to the file given as argument.
+ */
+public final class UploadBenchmark {
+
+    private static final int[] MTUS = { 23, 185, 247, 512 };
+    private static final long[] CONNECTION_INTERVALS_US = { 7500, 15000, 30000 };
+    private static final long TIMEOUT_NS = TimeUnit.HOURS.toNanos(1);
+
+    private enum Upload {
+
+        IMG_SAVE("imgSave", 304 * 256 / 2, 1) {
+            @Override
+            void run(final Glasses glasses) {
+                glasses.imgSave((byte) 1, new ImageData((char) 304, new byte[this.size]));
+            }
+        },
+        IMG_STREAM("imgStream", 304 * 256 / 8, 1) {
+            @Override
+            void run(final Glasses glasses) {
+                glasses.imgStream(new Image1bppData((char) 304, new byte[this.size]), (short) 0, (short) 0);
+            }
+        },
+        FONT_SAVE("fontSave", 20 * 1024, 1) {
+            @Override
+            void run(final Glasses glasses) {
+                glasses.fontSave((byte) 3, new FontData(new byte[this.size]));
+            }
+        },
+        LOAD_CONFIGURATION("loadConfiguration", 200 * 1024, 0) {
+            @Override
+            void run(final Glasses glasses) {
+                try {
+                    glasses.loadConfiguration(new BufferedReader(new StringReader(configuration(this.size))));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+
+        final String name;
+        final int size;
+        final int headerCommands;
+
+        Upload(final String name, final int size, final int headerCommands) {
+            this.name = name;
+            this.size = size;
+            this.headerCommands = headerCommands;
+        }
+
+        abstract void run(Glasses glasses);
+
+    }
+
+    private static final class Result {
+
+        private final Upload upload;
+        private final int mtu;
+        private final long connectionIntervalUs;
+        private final boolean writeWithoutResponse;
+        private long frameBytes;
+        private long timeToFirstPixelNs = -1;
+        private long timeToCompleteNs;
+        private long flowControlStops;
+        private long overflows;
+
+        private Result(final Upload upload, final int mtu, final long connectionIntervalUs,
+                final boolean writeWithoutResponse) {
+            this.upload = upload;
+            this.mtu = mtu;
+            this.connectionIntervalUs = connectionIntervalUs;
+            this.writeWithoutResponse = writeWithoutResponse;
+        }
+
+        private double getBytesPerSecond() {
+            return this.upload.size * 1e9 / this.timeToCompleteNs;
+        }
+
+    }
+
+    private UploadBenchmark() {
+    }
+
+    /*
+    A configuration saving an image, made of lines of hexadecimal frames
+     */
+    private static String configuration(final int size) {
+        final StringBuilder lines = new StringBuilder();
+        final CommandData header = new CommandData().addUInt8((byte) 2).addUInt32(size).addUInt16(304);
+        lines.append(Utils.bytesToHexString(new Command((byte) 0x41, header).toBytes())).append('\n');
+        for (final CommandData chunk : new CommandData(new byte[size]).split(240)) {
+            lines.append(Utils.bytesToHexString(new Command((byte) 0x41, chunk).toBytes())).append('\n');
+        }
+        return lines.toString();
+    }
+
+    private static Result run(final Upload upload, final int mtu, final long connectionIntervalUs,
+            final boolean writeWithoutResponse) {
+        final Result result = new Result(upload, mtu, connectionIntervalUs, writeWithoutResponse);
+        final VirtualScheduler scheduler = new VirtualScheduler();
+        final GlassesSimulator simulator = new GlassesSimulator(scheduler);
+        simulator.setMtu(mtu);
+        simulator.setConnectionInterval(connectionIntervalUs, TimeUnit.MICROSECONDS);
+        final TransportEngine engine = new TransportEngine(simulator, scheduler);
+        engine.setWriteWithoutResponse(writeWithoutResponse);
+        final EngineGlasses glasses = new EngineGlasses(engine);
+        simulator.connect(engine);
+        scheduler.advance(1, TimeUnit.SECONDS);
+        final long start = scheduler.nanoTime();
+        final long[] executed = new long[1];
+        simulator.setOnCommandExecuted(frame -> {
+            executed[0]++;
+            result.frameBytes += frame.length;
+            if (executed[0] == upload.headerCommands + 1) {
+                result.timeToFirstPixelNs = scheduler.nanoTime() - start;
+            }
+            result.timeToCompleteNs = scheduler.nanoTime() - start;
+        });
+        upload.run(glasses);
+        while (executed[0] < glasses.getWrittenCommands()) {
+            if (scheduler.nanoTime() - start > TIMEOUT_NS) {
+                throw new IllegalStateException(String.format(Locale.US, "%s did not complete, %d of %d commands",
+                        upload.name, executed[0], glasses.getWrittenCommands()));
+            }
+            scheduler.advance(1, TimeUnit.MILLISECONDS);
+        }
+        result.flowControlStops = simulator.getFlowControlStops();
+        result.overflows = simulator.getOverflows();
+        engine.close();
+        return result;
+    }
+
+    private static void write(final List<Result> results, final File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                final Result result = results.get(i);
+                writer.write(String.format(Locale.US, "    {\"upload\": \"%s\", \"mtu\": %d, \"connectionIntervalUs\": %d, "
+                                + "\"writeWithoutResponse\": %b, \"payloadBytes\": %d, \"frameBytes\": %d, "
+                                + "\"timeToFirstPixelMs\": %.3f, \"timeToCompleteMs\": %.3f, \"bytesPerSecond\": %.1f, "
+                                + "\"flowControlStops\": %d, \"overflows\": %d}%s\n",
+                        result.upload.name, result.mtu, result.connectionIntervalUs, result.writeWithoutResponse,
+                        result.upload.size, result.frameBytes, result.timeToFirstPixelNs / 1e6,
+                        result.timeToCompleteNs / 1e6, result.getBytesPerSecond(), result.flowControlStops,
+                        result.overflows, i + 1 < results.size() ? "," : ""));
+            }
+            writer.write("]\n");
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        SdkLog.setSink((level, tag, message, error) -> { });
+        final List<Result> results = new ArrayList<>();
+        System.out.println(String.format(Locale.US, "%-18s %4s %8s %8s %12s %12s %12s %6s %9s",
+                "upload", "mtu", "interval", "no-resp", "first (ms)", "total (ms)", "bytes/s", "stops", "overflows"));
+        for (final Upload upload : Upload.values()) {
+            for (final int mtu : MTUS) {
+                for (final long connectionIntervalUs : CONNECTION_INTERVALS_US) {
+                    for (final boolean writeWithoutResponse : new boolean[] { false, true }) {
+                        final Result result = run(upload, mtu, connectionIntervalUs, writeWithoutResponse);
+                        results.add(result);
+                        System.out.println(String.format(Locale.US,
+                                "%-18s %4d %8.1f %8b %12.1f %12.1f %12.0f %6d %9d", upload.name, mtu,
+                                connectionIntervalUs / 1e3, writeWithoutResponse, result.timeToFirstPixelNs / 1e6,
+                                result.timeToCompleteNs / 1e6, result.getBytesPerSecond(), result.flowControlStops,
+                                result.overflows));
+                    }
+                }
+            }
+        }
+        write(results, new File(args.length > 0 ? args[0] : "upload-results.json"));
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.core.transport.TransportEngine;
+import com.activelook.activelooksdk.types.CommandPriority;
+
+/**
+ * Debug glasses writing the commands through a transport engine, as the BLE glasses do.
+ */
+public final class EngineGlasses extends GlassesImpl {
+
+    private final TransportEngine engine;
+    private long writtenCommands;
+
+    public EngineGlasses(final TransportEngine engine) {
+        super("", glasses -> { });
+        this.engine = engine;
+        this.engine.setOnFrame(frame -> this.delegateToCallback(new Command(frame)));
+    }
+
+    @Override
+    protected void writeBytes(final byte[] bytes, final CommandPriority priority, final int supersedeKey) {
+        this.writtenCommands++;
+        this.engine.write(bytes, priority, supersedeKey);
+    }
+
+    @Override
+    protected void writeFrame(final Command command, final CommandPriority priority, final int supersedeKey) {
+        this.writtenCommands++;
+        this.engine.write(command, priority, supersedeKey);
+    }
+
+    public long getWrittenCommands() {
+        return this.writtenCommands;
+    }
+
+}
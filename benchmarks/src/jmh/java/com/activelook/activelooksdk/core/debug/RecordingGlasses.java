@@ -0,0 +1,62 @@
+/*
+
+Copyright 2021 Microoled
+Licensed under the Apache License, Version 2.0 (the “License”);
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an “AS IS” BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+package com.activelook.activelooksdk.core.debug;
+
+import com.activelook.activelooksdk.core.Command;
+import com.activelook.activelooksdk.types.CommandPriority;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Debug glasses handing the encoded commands to a blackhole.
+ * Commands are encoded in place into a ring buffer, as the transport engine does.
+ */
+public final class RecordingGlasses extends GlassesImpl {
+
+    private final Blackhole blackhole;
+    private final byte[] ring = new byte[64 * 1024];
+    private int position;
+    private int lastPosition;
+
+    public RecordingGlasses(final Blackhole blackhole) {
+        super("", glasses -> { });
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    protected void writeBytes(final byte[] bytes, final CommandPriority priority, final int supersedeKey) {
+        this.blackhole.consume(bytes);
+    }
+
+    @Override
+    protected void writeFrame(final Command command, final CommandPriority priority, final int supersedeKey) {
+        this.lastPosition = this.position;
+        command.encode(this.ring, this.position, this.ring.length - 1);
+        this.position += command.getEncodedLength();
+        this.blackhole.consume(this.ring);
+    }
+
+    /**
+     * @return The first byte of the query id of the last encoded command.
+     */
+    public int getLastQueryId() {
+        return this.ring[(this.lastPosition + 4) & (this.ring.length - 1)] & 0xFF;
+    }
+
+    public void respond(final Command response) {
+        this.delegateToCallback(response);
+    }
+
+}